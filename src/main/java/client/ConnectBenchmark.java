@@ -0,0 +1,82 @@
+package client;
+
+import common.JsonCodec;
+import common.Protocol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many new connections per second the server accepts, as in a
+ * reconnect storm. Every thread repeatedly connects, sends a heartbeat, waits
+ * for the answer and disconnects.
+ *
+ * Usage: java client.ConnectBenchmark <server-address> <port> [threads] [seconds]
+ */
+public class ConnectBenchmark {
+    private static final int TIMEOUT_MS = 2000;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 2) {
+            System.out.println("Usage: java client.ConnectBenchmark <server-address> <port> [threads] [seconds]");
+            return;
+        }
+
+        InetSocketAddress address = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+
+        byte[] ping = new JsonCodec().encode(Protocol.createPingRequest());
+        AtomicLong completed = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        long endTime = System.nanoTime() + seconds * 1_000_000_000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                while (System.nanoTime() < endTime) {
+                    if (connectOnce(address, ping)) {
+                        completed.incrementAndGet();
+                    } else {
+                        failed.incrementAndGet();
+                    }
+                }
+            }, "ConnectBenchmark-" + (i + 1));
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        System.out.printf("%d connections in %d s: %.0f connections/s, %d failed%n",
+                completed.get(), seconds, completed.get() / (double) seconds, failed.get());
+    }
+
+    private static boolean connectOnce(InetSocketAddress address, byte[] ping) {
+        try (Socket socket = new Socket()) {
+            // reset on close so the client side does not run out of ports in TIME_WAIT
+            socket.setSoLinger(true, 0);
+            socket.connect(address, TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+
+            OutputStream output = socket.getOutputStream();
+            output.write(ping);
+            output.flush();
+
+            // a busy server answers with a BUSY line instead of PONG
+            InputStream input = socket.getInputStream();
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = input.read()) != -1 && b != '\n') {
+                line.append((char) b);
+            }
+            return line.indexOf(Protocol.PONG) >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
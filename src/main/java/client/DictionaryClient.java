@@ -1,5 +1,6 @@
 package client;
 
+import common.Compressor;
 import common.Protocol;
 
 import javax.swing.*;
@@ -10,8 +11,6 @@ import java.awt.event.ActionListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.*;
-import java.net.Socket;
-import java.net.SocketException;
 import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -19,13 +18,14 @@ import java.util.Locale;
 
 public class DictionaryClient extends JFrame {
     // Network components
-    private Socket socket;
-    private BufferedReader reader;
-    private PrintWriter writer;
+    private ServerConnection connection;
     private String serverAddress;
     private int serverPort;
+    private boolean binaryCodec;
+    private boolean compression;
     private boolean connected = false;
     private Timer connectionCheckTimer;
+    private long reconnectNotBefore = 0; // set when the server asks us to back off
 
     // Common GUI components
     private JTextField wordField;
@@ -49,6 +49,7 @@ public class DictionaryClient extends JFrame {
     // Navigation and utility components
     private JButton switchModeButton;
     private JButton reconnectButton;
+    private JLabel rttLabel;
 
     // Current mode
     private boolean inEditMode = false;
@@ -57,8 +58,14 @@ public class DictionaryClient extends JFrame {
     private final String EDIT_MODE_PASSWORD = "1234"; // Default password
 
     public DictionaryClient(String serverAddress, int serverPort) {
+        this(serverAddress, serverPort, false, false);
+    }
+
+    public DictionaryClient(String serverAddress, int serverPort, boolean binaryCodec, boolean compression) {
         this.serverAddress = serverAddress;
         this.serverPort = serverPort;
+        this.binaryCodec = binaryCodec;
+        this.compression = compression;
 
         // Set window properties
         setTitle("Dictionary Client");
@@ -94,13 +101,20 @@ public class DictionaryClient extends JFrame {
     private void initializeConnection(String serverAddress, int serverPort) throws IOException {
         try {
             // Create socket and connect to server
-            socket = new Socket(serverAddress, serverPort);
-            reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
-            System.out.println("Connected to server at " + serverAddress + ":" + serverPort);
+            connection = new ServerConnection(serverAddress, serverPort, binaryCodec);
+            final ServerConnection current = connection;
+            connection.setNoticeListener(notice -> handleNotice(current, notice));
+            if (compression && !connection.enableCompression(Compressor.DEFAULT_THRESHOLD)) {
+                System.out.println("Server does not support compression, continuing uncompressed");
+            }
+            System.out.println("Connected to server at " + serverAddress
+                    + (serverAddress.startsWith(ServerConnection.UNIX_PREFIX) ? "" : ":" + serverPort));
             connected = true;
         } catch (IOException e) {
             connected = false;
+            if (e instanceof ServerBusyException) {
+                backOffReconnect((ServerBusyException) e);
+            }
             throw new IOException("Could not connect to server: " + e.getMessage(), e);
         }
     }
@@ -128,27 +142,16 @@ public class DictionaryClient extends JFrame {
         if (connected) {
             try {
                 // Try to send a simple ping
-                if (socket != null && !socket.isClosed()) {
-                    // Check if the socket is still connected
-                    connected = !socket.isClosed() && socket.isConnected() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+                if (connection != null) {
+                    // Check if the connection is still open
+                    connected = connection.isOpen();
 
                     if (connected) {
-                        // Try to send a search request for a non-existent word as a ping
+                        // Send a heartbeat, which the server answers without a dictionary lookup
                         try {
-                            // Set a short timeout for the ping
-                            socket.setSoTimeout(2000);
-
-                            Protocol.Message pingRequest = Protocol.createSearchRequest("__ping__");
-                            writer.println(Protocol.toJson(pingRequest));
-
-                            // Try to read response
-                            String responseJson = reader.readLine();
-                            if (responseJson == null) {
-                                connected = false;
-                            }
-
-                            // Reset socket timeout
-                            socket.setSoTimeout(0);
+                            // Use a short timeout for the ping
+                            long rttNanos = connection.ping(2000);
+                            updateRoundTripTime(rttNanos);
                         } catch (IOException e) {
                             connected = false;
                         }
@@ -180,6 +183,13 @@ public class DictionaryClient extends JFrame {
     }
 
     private void reconnect() {
+        // an overloaded server asked us to wait, reconnecting sooner would only add load
+        long waitMillis = reconnectNotBefore - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            showError("Server is busy. Please wait " + ((waitMillis + 999) / 1000) + " seconds before reconnecting.");
+            return;
+        }
+
         try {
             // Close existing connection if any
             closeConnection();
@@ -201,7 +211,76 @@ public class DictionaryClient extends JFrame {
         }
     }
 
+    private void handleCommunicationError(IOException e) {
+        if (e instanceof ServerBusyException && connection != null && connection.isOpen()) {
+            // the server shed or rate limited this request but kept the connection
+            showError(e.getMessage());
+            return;
+        }
+
+        connected = false;
+        updateConnectionStatus();
+        if (e instanceof ServerBusyException) {
+            backOffReconnect((ServerBusyException) e);
+            showError("Server is currently at maximum capacity.\nPlease reconnect in a few seconds.");
+        } else {
+            showError("Error communicating with server: " + e.getMessage() + "\nPlease reconnect.");
+        }
+    }
+
+    // A draining server asks us to move to a new connection; pick a random moment
+    // in the window it gives so its clients do not all reconnect at once
+    private void handleNotice(ServerConnection source, Protocol.Message notice) {
+        if (!Protocol.RECONNECT.equals(notice.getStatus()) || connectionCheckTimer == null) {
+            return;
+        }
+        long window = notice.getRetryAfterMillis() != null ? notice.getRetryAfterMillis() : 0;
+        long delay = (long) (Math.random() * (window + 1));
+        connectionCheckTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(() -> reconnectAfterNotice(source));
+            }
+        }, delay);
+    }
+
+    private void reconnectAfterNotice(ServerConnection source) {
+        if (connection != source) {
+            return; // already reconnected
+        }
+        System.out.println("Server is restarting, reconnecting...");
+        closeConnection();
+        try {
+            initializeConnection(serverAddress, serverPort);
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+        updateConnectionStatus();
+    }
+
+    // hold off reconnects for the server's hint plus up to half as much again, so
+    // clients turned away together do not all reconnect at the same moment
+    private void backOffReconnect(ServerBusyException e) {
+        long retryAfter = e.getRetryAfterMillis();
+        long jitter = (long) (Math.random() * (retryAfter / 2 + 1));
+        reconnectNotBefore = System.currentTimeMillis() + retryAfter + jitter;
+    }
+
+    // Show the latest heartbeat round trip next to the connection button
+    private void updateRoundTripTime(long rttNanos) {
+        final String text = String.format("RTT: %.1f ms", rttNanos / 1_000_000.0);
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                rttLabel.setText(text);
+            }
+        });
+    }
+
     private void updateConnectionStatus() {
+        if (!connected && rttLabel != null) {
+            rttLabel.setText("");
+        }
         searchButton.setEnabled(connected);
         updateButton.setEnabled(connected);
         reconnectButton.setText(connected ? "Connected" : "Reconnect");
@@ -251,6 +330,7 @@ public class DictionaryClient extends JFrame {
         reconnectButton = new JButton("Connected");
         reconnectButton.setBackground(new Color(100, 180, 100));
         reconnectButton.setPreferredSize(new Dimension(120, 30));
+        rttLabel = new JLabel("", SwingConstants.CENTER);
     }
 
     private void setupLayout() {
@@ -275,6 +355,7 @@ public class DictionaryClient extends JFrame {
         rightButtonPanel.add(switchModeButton, BorderLayout.EAST);
 
         controlPanel.add(searchButton, BorderLayout.WEST);
+        controlPanel.add(rttLabel, BorderLayout.CENTER);
         controlPanel.add(rightButtonPanel, BorderLayout.EAST);
 
         topPanel.add(wordInputPanel, BorderLayout.NORTH);
@@ -506,13 +587,9 @@ public class DictionaryClient extends JFrame {
         }
 
         try {
-            // Create and send search request
-            Protocol.Message request = Protocol.createSearchRequest(word);
-            writer.println(Protocol.toJson(request));
-
-            // Get response
-            String responseJson = reader.readLine();
-            Protocol.Message response = Protocol.fromJson(responseJson);
+            // Create and send search request, with spelling suggestions in case of a miss
+            Protocol.Message request = Protocol.createSearchRequest(word, true);
+            Protocol.Message response = connection.send(request);
 
             // Process and display results
             displaySearchResults(response);
@@ -523,9 +600,7 @@ public class DictionaryClient extends JFrame {
             }
 
         } catch (IOException e) {
-            connected = false;
-            updateConnectionStatus();
-            showError("Error communicating with server: " + e.getMessage() + "\nPlease reconnect.");
+            handleCommunicationError(e);
         }
     }
 
@@ -552,10 +627,7 @@ public class DictionaryClient extends JFrame {
             if (meaning.isEmpty()) {
                 // First check if word exists
                 Protocol.Message checkRequest = Protocol.createSearchRequest(word);
-                writer.println(Protocol.toJson(checkRequest));
-
-                String responseJson = reader.readLine();
-                Protocol.Message response = Protocol.fromJson(responseJson);
+                Protocol.Message response = connection.send(checkRequest);
 
                 if (Protocol.SUCCESS.equals(response.getStatus())) {
                     showError("Word already exists and meaning is empty. Please provide a meaning.");
@@ -564,10 +636,7 @@ public class DictionaryClient extends JFrame {
 
                 // Word doesn't exist, create with empty meaning
                 Protocol.Message request = Protocol.createAddRequest(word, "");
-                writer.println(Protocol.toJson(request));
-
-                responseJson = reader.readLine();
-                response = Protocol.fromJson(responseJson);
+                response = connection.send(request);
 
                 if (Protocol.SUCCESS.equals(response.getStatus())) {
                     resultArea.setText("Word '" + word + "' added successfully (with no meaning).");
@@ -577,10 +646,7 @@ public class DictionaryClient extends JFrame {
             } else {
                 // First check if word exists
                 Protocol.Message checkRequest = Protocol.createSearchRequest(word);
-                writer.println(Protocol.toJson(checkRequest));
-
-                String responseJson = reader.readLine();
-                Protocol.Message response = Protocol.fromJson(responseJson);
+                Protocol.Message response = connection.send(checkRequest);
 
                 if (Protocol.SUCCESS.equals(response.getStatus())) {
                     // Word exists, check if meaning exists
@@ -592,10 +658,7 @@ public class DictionaryClient extends JFrame {
 
                     // Add meaning to existing word
                     Protocol.Message request = Protocol.createAddMeaningRequest(word, meaning);
-                    writer.println(Protocol.toJson(request));
-
-                    responseJson = reader.readLine();
-                    response = Protocol.fromJson(responseJson);
+                    response = connection.send(request);
 
                     if (Protocol.SUCCESS.equals(response.getStatus())) {
                         resultArea.setText("New meaning for '" + word + "' added successfully.");
@@ -606,10 +669,7 @@ public class DictionaryClient extends JFrame {
                 } else {
                     // Word doesn't exist, create new word with meaning
                     Protocol.Message request = Protocol.createAddRequest(word, meaning);
-                    writer.println(Protocol.toJson(request));
-
-                    responseJson = reader.readLine();
-                    response = Protocol.fromJson(responseJson);
+                    response = connection.send(request);
 
                     if (Protocol.SUCCESS.equals(response.getStatus())) {
                         resultArea.setText("Word '" + word + "' with meaning added successfully.");
@@ -620,9 +680,7 @@ public class DictionaryClient extends JFrame {
                 }
             }
         } catch (IOException e) {
-            connected = false;
-            updateConnectionStatus();
-            showError("Error communicating with server: " + e.getMessage() + "\nPlease reconnect.");
+            handleCommunicationError(e);
         }
     }
 
@@ -646,10 +704,7 @@ public class DictionaryClient extends JFrame {
         try {
             // First check if word exists
             Protocol.Message checkRequest = Protocol.createSearchRequest(word);
-            writer.println(Protocol.toJson(checkRequest));
-
-            String responseJson = reader.readLine();
-            Protocol.Message response = Protocol.fromJson(responseJson);
+            Protocol.Message response = connection.send(checkRequest);
 
             if (!Protocol.SUCCESS.equals(response.getStatus())) {
                 showError("Word '" + word + "' not found in the dictionary.");
@@ -662,10 +717,7 @@ public class DictionaryClient extends JFrame {
             if (meaning.isEmpty()) {
                 // Remove entire word
                 Protocol.Message request = Protocol.createRemoveRequest(word);
-                writer.println(Protocol.toJson(request));
-
-                responseJson = reader.readLine();
-                response = Protocol.fromJson(responseJson);
+                response = connection.send(request);
 
                 if (Protocol.SUCCESS.equals(response.getStatus())) {
                     resultArea.setText("Word '" + word + "' removed successfully.");
@@ -682,10 +734,7 @@ public class DictionaryClient extends JFrame {
 
                 // Use updateMeaning with special "<delete>" marker to remove the meaning
                 Protocol.Message request = Protocol.createUpdateMeaningRequest(word, meaning, "<delete>");
-                writer.println(Protocol.toJson(request));
-
-                responseJson = reader.readLine();
-                response = Protocol.fromJson(responseJson);
+                response = connection.send(request);
 
                 if (Protocol.SUCCESS.equals(response.getStatus())) {
                     resultArea.setText("Meaning removed from word '" + word + "' successfully.");
@@ -695,9 +744,7 @@ public class DictionaryClient extends JFrame {
                 }
             }
         } catch (IOException e) {
-            connected = false;
-            updateConnectionStatus();
-            showError("Error communicating with server: " + e.getMessage() + "\nPlease reconnect.");
+            handleCommunicationError(e);
         }
     }
 
@@ -727,10 +774,7 @@ public class DictionaryClient extends JFrame {
         try {
             // First check if word exists
             Protocol.Message checkRequest = Protocol.createSearchRequest(word);
-            writer.println(Protocol.toJson(checkRequest));
-
-            String responseJson = reader.readLine();
-            Protocol.Message response = Protocol.fromJson(responseJson);
+            Protocol.Message response = connection.send(checkRequest);
 
             if (!Protocol.SUCCESS.equals(response.getStatus())) {
                 showError("Word '" + word + "' not found in the dictionary.");
@@ -746,10 +790,7 @@ public class DictionaryClient extends JFrame {
 
             // Update the meaning
             Protocol.Message request = Protocol.createUpdateMeaningRequest(word, oldMeaning, newMeaning);
-            writer.println(Protocol.toJson(request));
-
-            responseJson = reader.readLine();
-            response = Protocol.fromJson(responseJson);
+            response = connection.send(request);
 
             if (Protocol.SUCCESS.equals(response.getStatus())) {
                 resultArea.setText("Meaning for '" + word + "' updated successfully.");
@@ -760,9 +801,7 @@ public class DictionaryClient extends JFrame {
             }
 
         } catch (IOException e) {
-            connected = false;
-            updateConnectionStatus();
-            showError("Error communicating with server: " + e.getMessage() + "\nPlease reconnect.");
+            handleCommunicationError(e);
         }
     }
 
@@ -791,7 +830,13 @@ public class DictionaryClient extends JFrame {
             resultArea.setText(sb.toString());
         } else if (Protocol.MEANING_NOT_FOUND.equals(response.getStatus()) ||
                 Protocol.WORD_NOT_FOUND.equals(response.getStatus())) {
-            resultArea.setText("Word '" + response.getWord() + "' not found in the dictionary.");
+            StringBuilder sb = new StringBuilder();
+            sb.append("Word '").append(response.getWord()).append("' not found in the dictionary.");
+            // a miss carries the closest existing words, if any
+            if (!response.getSuggestions().isEmpty()) {
+                sb.append("\n\nDid you mean: ").append(String.join(", ", response.getSuggestions())).append("?");
+            }
+            resultArea.setText(sb.toString());
         } else {
             resultArea.setText("Error: " + response.getErrorMessage());
         }
@@ -803,9 +848,7 @@ public class DictionaryClient extends JFrame {
 
     private void closeConnection() {
         try {
-            if (reader != null) reader.close();
-            if (writer != null) writer.close();
-            if (socket != null) socket.close();
+            if (connection != null) connection.close();
             System.out.println("Connection closed");
         } catch (IOException e) {
             System.err.println("Error closing connection: " + e.getMessage());
@@ -816,28 +859,75 @@ public class DictionaryClient extends JFrame {
         // Set default locale to English
         Locale.setDefault(Locale.ENGLISH);
         // Check command-line arguments
-        if (args.length != 2) {
-            System.out.println("Usage: java -jar DictionaryClient.jar <server-address> <server-port>");
+        // a server on this host can be reached through its Unix domain socket instead
+        boolean unixSocket = args.length >= 1 && args[0].startsWith(ServerConnection.UNIX_PREFIX);
+        if (args.length < 2 && !unixSocket) {
+            System.out.println("Usage: java -jar DictionaryClient.jar <server-address> <server-port> | unix:<socket-path>"
+                    + " [--codec=json|binary] [--compress] [--export=<file>]");
             return;
         }
 
         String serverAddress = args[0];
-        int serverPort;
+        int serverPort = 0;
 
-        try {
-            serverPort = Integer.parseInt(args[1]);
-        } catch (NumberFormatException e) {
-            System.err.println("Invalid port number: " + args[1]);
+        if (!unixSocket) {
+            try {
+                serverPort = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port number: " + args[1]);
+                return;
+            }
+        }
+
+        // Optional settings
+        boolean binaryCodec = false;
+        boolean compression = false;
+        String exportFile = null;
+        for (int i = unixSocket ? 1 : 2; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            if (args[i].equals("--compress")) {
+                compression = true;
+            } else if (option.length == 2 && option[0].equals("--export") && !option[1].isEmpty()) {
+                exportFile = option[1];
+            } else if (option.length == 2 && option[0].equals("--codec")
+                    && (option[1].equals("json") || option[1].equals("binary"))) {
+                binaryCodec = option[1].equals("binary");
+            } else {
+                System.err.println("Invalid option: " + args[i]);
+                return;
+            }
+        }
+
+        // Download the whole dictionary without starting the GUI
+        if (exportFile != null) {
+            exportDictionary(serverAddress, serverPort, binaryCodec, compression, exportFile);
             return;
         }
 
         // Start the client application
+        final int port = serverPort;
+        final boolean useBinaryCodec = binaryCodec;
+        final boolean useCompression = compression;
         SwingUtilities.invokeLater(new Runnable() {
             @Override
             public void run() {
-                DictionaryClient client = new DictionaryClient(serverAddress, serverPort);
+                DictionaryClient client = new DictionaryClient(serverAddress, port, useBinaryCodec, useCompression);
                 client.setVisible(true);
             }
         });
     }
+
+    private static void exportDictionary(String serverAddress, int serverPort, boolean binaryCodec,
+                                         boolean compression, String filePath) {
+        try (ServerConnection exportConnection = new ServerConnection(serverAddress, serverPort, binaryCodec);
+             OutputStream output = new BufferedOutputStream(new FileOutputStream(filePath))) {
+            if (compression) {
+                exportConnection.enableCompression(Compressor.DEFAULT_THRESHOLD);
+            }
+            long bytes = exportConnection.export(output);
+            System.out.println("Exported " + bytes + " bytes to " + filePath);
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package client;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server stays overloaded, or keeps rate limiting this client,
+ * after the client has backed off and retried, or when it turns the whole
+ * connection away.
+ */
+public class ServerBusyException extends IOException {
+    private final long retryAfterMillis;
+
+    public ServerBusyException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    // how long the server asked clients to wait before trying again
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,500 @@
+package client;
+
+import common.BinaryCodec;
+import common.Compressor;
+import common.JsonCodec;
+import common.Protocol;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A connection to the dictionary server that can keep many requests in flight.
+ * Every request is tagged with a request id and a reader thread matches responses
+ * back to their requests, so responses may arrive in any order.
+ *
+ * The connection speaks JSON lines, or the compact binary codec when requested
+ * and the server accepts the handshake. It runs over TCP, or over a Unix domain
+ * socket when the server address is given as "unix:" followed by the socket path.
+ */
+public class ServerConnection implements Closeable {
+    private static final long DEFAULT_TIMEOUT_MS = 10000;
+    private static final int HANDSHAKE_TIMEOUT_MS = 2000;
+    private static final long EXPORT_TIMEOUT_MS = 10 * 60 * 1000;
+
+    // back-off for BUSY and THROTTLED responses: exponential from the server's hint, with jitter
+    private static final int MAX_BUSY_RETRIES = 4;
+    private static final long DEFAULT_RETRY_AFTER_MS = 500;
+    private static final long MAX_BACKOFF_MS = 10000;
+
+    // server address prefix that selects a Unix domain socket, for clients on the server's host
+    public static final String UNIX_PREFIX = "unix:";
+
+    // where to connect: a host and port, or a Unix domain socket path
+    private final String serverAddress;
+    private final int serverPort;
+    private final Path socketPath;
+
+    private Socket socket;         // TCP connections
+    private SocketChannel channel; // Unix domain socket connections
+    private InputStream input;
+    private OutputStream output;
+    private boolean binary;
+
+    // JSON line streams
+    private JsonCodec jsonCodec;
+    private OutputStream jsonOutput;
+
+    // binary codec streams
+    private DataInputStream binaryInput;
+    private DataOutputStream binaryOutput;
+
+    // inflates compressed responses once compression is enabled
+    private final Compressor compressor = new Compressor();
+
+    private final AtomicLong nextRequestId = new AtomicLong(1);
+    private final AtomicInteger waitingWriters = new AtomicInteger(0);
+    private final AtomicLong flushCount = new AtomicLong(0);
+    // sorted so responses from servers that do not echo ids can go to the oldest request
+    private final ConcurrentSkipListMap<Long, CompletableFuture<Protocol.Message>> pending = new ConcurrentSkipListMap<>();
+    // where the reader thread copies the payload that follows an EXPORT response
+    private final Map<Long, OutputStream> exportSinks = new ConcurrentHashMap<>();
+    private volatile boolean open = true;
+    // set when the server turned the connection away as busy
+    private volatile ServerBusyException rejection;
+    // receives messages the server pushes on its own, called on the reader thread
+    private volatile Consumer<Protocol.Message> noticeListener;
+
+    public ServerConnection(String serverAddress, int serverPort) throws IOException {
+        this(serverAddress, serverPort, false);
+    }
+
+    /**
+     * @param serverAddress a host name, or {@link #UNIX_PREFIX} and a socket path, in which case the port is ignored
+     * @param binaryCodec true to ask the server for the binary codec; falls back to JSON if declined
+     */
+    public ServerConnection(String serverAddress, int serverPort, boolean binaryCodec) throws IOException {
+        this(serverAddress, serverPort,
+                serverAddress.startsWith(UNIX_PREFIX) ? Paths.get(serverAddress.substring(UNIX_PREFIX.length())) : null,
+                binaryCodec);
+    }
+
+    /**
+     * Connects over the Unix domain socket the server listens on.
+     */
+    public ServerConnection(Path socketPath, boolean binaryCodec) throws IOException {
+        this(null, 0, socketPath, binaryCodec);
+    }
+
+    private ServerConnection(String serverAddress, int serverPort, Path socketPath, boolean binaryCodec)
+            throws IOException {
+        this.serverAddress = serverAddress;
+        this.serverPort = serverPort;
+        this.socketPath = socketPath;
+
+        connect();
+        if (binaryCodec && !negotiateBinary()) {
+            // a server without binary support may have taken the handshake byte as
+            // part of a JSON request, so start over on a clean connection
+            closeTransport();
+            connect();
+        }
+
+        if (binary) {
+            binaryInput = new DataInputStream(new BufferedInputStream(input));
+            binaryOutput = new DataOutputStream(new BufferedOutputStream(output));
+        } else {
+            jsonOutput = new BufferedOutputStream(output);
+            jsonCodec = new JsonCodec(input, jsonOutput, compressor);
+        }
+
+        Thread readerThread = new Thread(this::readResponses, "DictionaryClient-Reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private void connect() throws IOException {
+        if (socketPath != null) {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+            input = Channels.newInputStream(channel);
+            output = Channels.newOutputStream(channel);
+        } else {
+            socket = new Socket(serverAddress, serverPort);
+            // requests are flushed whole, so Nagle's algorithm would only delay them
+            socket.setTcpNoDelay(true);
+            input = socket.getInputStream();
+            output = socket.getOutputStream();
+        }
+    }
+
+    private boolean negotiateBinary() throws IOException {
+        output.write(BinaryCodec.HANDSHAKE);
+        output.flush();
+
+        // Unix domain sockets have no read timeout, but every server that listens
+        // on one answers the handshake
+        if (socket != null) {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MS);
+        }
+        try {
+            int answer = input.read();
+            if (answer == BinaryCodec.HANDSHAKE) {
+                binary = true;
+                return true;
+            }
+            if (answer == '{') {
+                // turned away before the handshake was read, the rest is a JSON BUSY line
+                throw busyRejection(Protocol.fromJson("{" + readLine(input)));
+            }
+            // an explicit decline leaves the connection usable for JSON
+            return answer == BinaryCodec.HANDSHAKE_DECLINED;
+        } catch (SocketTimeoutException e) {
+            return false;
+        } finally {
+            if (socket != null) {
+                socket.setSoTimeout(0);
+            }
+        }
+    }
+
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1 && b != '\n') {
+            line.write(b);
+        }
+        return line.toString("UTF-8");
+    }
+
+    private static ServerBusyException busyRejection(Protocol.Message response) {
+        Long retryAfter = response != null ? response.getRetryAfterMillis() : null;
+        String message = response != null && response.getErrorMessage() != null
+                ? response.getErrorMessage() : "Server is busy, please retry later";
+        return new ServerBusyException(message, retryAfter != null ? retryAfter : DEFAULT_RETRY_AFTER_MS);
+    }
+
+    /**
+     * Sets the listener for server notices, such as the request to reconnect sent
+     * while the server drains for a restart.
+     */
+    public void setNoticeListener(Consumer<Protocol.Message> noticeListener) {
+        this.noticeListener = noticeListener;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Asks the server to compress large responses on this connection.
+     *
+     * @return true if the server agreed; older servers answer with an error
+     */
+    public boolean enableCompression(int threshold) throws IOException {
+        Protocol.Message response = send(Protocol.createCompressRequest(threshold));
+        return Protocol.SUCCESS.equals(response.getStatus());
+    }
+
+    /**
+     * Looks up words starting with a prefix, for autocomplete.
+     *
+     * @return up to limit matching words in sorted order, empty if there are none
+     */
+    public List<String> findPrefix(String prefix, int limit) throws IOException {
+        Protocol.Message response = send(Protocol.createPrefixRequest(prefix, limit, false));
+
+        if (!Protocol.SUCCESS.equals(response.getStatus())) {
+            throw new IOException("Prefix lookup failed: " + response.getErrorMessage());
+        }
+        return response.getResults();
+    }
+
+    /**
+     * Sends a heartbeat and waits for the answer.
+     *
+     * @return the round-trip time in nanoseconds
+     */
+    public long ping(long timeoutMillis) throws IOException {
+        Protocol.Message request = Protocol.createPingRequest();
+        long start = System.nanoTime();
+        await(request, sendAsync(request), timeoutMillis);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Downloads a snapshot of the whole dictionary in the dictionary file format.
+     * Other requests may stay in flight while the snapshot is streamed.
+     *
+     * @param sink receives the snapshot bytes; it is not closed
+     * @return the number of bytes written to the sink
+     */
+    public long export(OutputStream sink) throws IOException {
+        Protocol.Message response = sendWithRetry(Protocol.createExportRequest(), sink, EXPORT_TIMEOUT_MS);
+
+        if (!Protocol.SUCCESS.equals(response.getStatus())) {
+            throw new IOException("Export failed: " + response.getErrorMessage());
+        }
+        return Long.parseLong(response.getResults().get(0));
+    }
+
+    /**
+     * Sends a request without waiting for the response. A BUSY response is
+     * returned as-is; only the blocking send methods retry.
+     *
+     * @param request the request to send; its request id is assigned here
+     * @return a future completed with the matching response
+     */
+    public CompletableFuture<Protocol.Message> sendAsync(Protocol.Message request) {
+        return sendAsync(request, null);
+    }
+
+    private CompletableFuture<Protocol.Message> sendAsync(Protocol.Message request, OutputStream exportSink) {
+        CompletableFuture<Protocol.Message> future = new CompletableFuture<>();
+        if (!open) {
+            future.completeExceptionally(rejection != null ? rejection : new IOException("Connection is closed"));
+            return future;
+        }
+
+        long requestId = nextRequestId.getAndIncrement();
+        request.setRequestId(requestId);
+        if (exportSink != null) {
+            exportSinks.put(requestId, exportSink);
+        }
+        pending.put(requestId, future);
+
+        try {
+            writeMessage(request);
+        } catch (IOException e) {
+            pending.remove(requestId);
+            exportSinks.remove(requestId);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Sends a request and waits for its response. If the server answers BUSY or
+     * THROTTLED the request is retried after a jittered back-off.
+     *
+     * @throws ServerBusyException if the server is still busy after the last retry
+     */
+    public Protocol.Message send(Protocol.Message request) throws IOException {
+        return send(request, DEFAULT_TIMEOUT_MS);
+    }
+
+    public Protocol.Message send(Protocol.Message request, long timeoutMillis) throws IOException {
+        return sendWithRetry(request, null, timeoutMillis);
+    }
+
+    private Protocol.Message sendWithRetry(Protocol.Message request, OutputStream exportSink,
+                                           long timeoutMillis) throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            Protocol.Message response = await(request, sendAsync(request, exportSink), timeoutMillis);
+            if (!Protocol.BUSY.equals(response.getStatus()) && !Protocol.THROTTLED.equals(response.getStatus())) {
+                return response;
+            }
+
+            ServerBusyException busy = busyRejection(response);
+            if (attempt == MAX_BUSY_RETRIES || rejection != null) {
+                throw busy;
+            }
+            backOff(attempt, busy.getRetryAfterMillis());
+        }
+    }
+
+    // wait the server's hint doubled per attempt, with "equal jitter" so clients
+    // rejected together do not all come back at the same moment
+    private static void backOff(int attempt, long retryAfterMillis) throws IOException {
+        long base = Math.min(MAX_BACKOFF_MS, Math.max(1, retryAfterMillis) << attempt);
+        long delay = base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while backing off", e);
+        }
+    }
+
+    private Protocol.Message await(Protocol.Message request, CompletableFuture<Protocol.Message> future,
+                                   long timeoutMillis) throws IOException {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            pending.remove(request.getRequestId());
+            exportSinks.remove(request.getRequestId());
+            throw new IOException("Timed out waiting for server response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ServerBusyException) {
+                throw (ServerBusyException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for server response", e);
+        }
+    }
+
+    // a writer that finds others queued behind it leaves the flush to the last of
+    // them, so requests sent from several threads at once share a send call
+    private void writeMessage(Protocol.Message message) throws IOException {
+        waitingWriters.incrementAndGet();
+        synchronized (this) {
+            boolean last;
+            try {
+                if (binary) {
+                    BinaryCodec.write(message, binaryOutput);
+                } else {
+                    jsonCodec.write(message);
+                }
+            } finally {
+                last = waitingWriters.decrementAndGet() == 0;
+            }
+            if (last) {
+                if (binary) {
+                    binaryOutput.flush();
+                } else {
+                    jsonOutput.flush();
+                }
+                flushCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The number of times requests were flushed to the server, at most one per request.
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    // returns null at end of stream
+    private Protocol.Message readMessage() throws IOException {
+        if (binary) {
+            return BinaryCodec.read(binaryInput, compressor);
+        }
+        return jsonCodec.read();
+    }
+
+    private void readResponses() {
+        IOException failure = new IOException("Connection closed by server");
+        try {
+            Protocol.Message response;
+            while ((response = readMessage()) != null) {
+                if (Protocol.NOTICE.equals(response.getOperation())) {
+                    // not an answer to any request
+                    Consumer<Protocol.Message> listener = noticeListener;
+                    if (listener != null) {
+                        listener.accept(response);
+                    }
+                    continue;
+                }
+
+                CompletableFuture<Protocol.Message> future;
+                if (response.getRequestId() != null) {
+                    future = pending.remove(response.getRequestId());
+                } else {
+                    if (Protocol.BUSY.equals(response.getStatus())) {
+                        // every request carries an id, so this turns away the whole
+                        // connection and the server closes it next
+                        rejection = busyRejection(response);
+                    }
+                    Map.Entry<Long, CompletableFuture<Protocol.Message>> oldest = pending.pollFirstEntry();
+                    future = oldest != null ? oldest.getValue() : null;
+                }
+
+                OutputStream sink = response.getRequestId() != null
+                        ? exportSinks.remove(response.getRequestId()) : null;
+                IOException sinkFailure = null;
+                if (Protocol.EXPORT.equals(response.getOperation()) && Protocol.SUCCESS.equals(response.getStatus())) {
+                    // the snapshot follows on the wire and must be consumed even if nobody wants it
+                    sinkFailure = readPayload(Long.parseLong(response.getResults().get(0)), sink);
+                }
+
+                if (future != null) {
+                    if (sinkFailure != null) {
+                        future.completeExceptionally(sinkFailure);
+                    } else {
+                        future.complete(response);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            failure = new IOException("Error reading from server: " + e.getMessage(), e);
+        } finally {
+            open = false;
+            failPending(rejection != null ? rejection : failure);
+        }
+    }
+
+    /**
+     * Copies a raw payload that follows a response into the sink, or discards it.
+     *
+     * @return the error raised by the sink, if any; the payload is consumed regardless
+     */
+    private IOException readPayload(long size, OutputStream sink) throws IOException {
+        byte[] buffer = new byte[8192];
+        IOException sinkFailure = null;
+        long remaining = size;
+        while (remaining > 0) {
+            int chunk = (int) Math.min(buffer.length, remaining);
+            int read = binary ? binaryInput.read(buffer, 0, chunk) : jsonCodec.readRaw(buffer, 0, chunk);
+            if (read == -1) {
+                throw new EOFException("Connection closed during export");
+            }
+            remaining -= read;
+
+            if (sink != null && sinkFailure == null) {
+                try {
+                    sink.write(buffer, 0, read);
+                } catch (IOException e) {
+                    sinkFailure = e;
+                }
+            }
+        }
+        return sinkFailure;
+    }
+
+    private void failPending(IOException failure) {
+        Map.Entry<Long, CompletableFuture<Protocol.Message>> entry;
+        while ((entry = pending.pollFirstEntry()) != null) {
+            entry.getValue().completeExceptionally(failure);
+        }
+    }
+
+    public boolean isOpen() {
+        return open && (socket != null ? !socket.isClosed() : channel.isOpen());
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        // closing the socket closes both streams and unblocks the reader thread
+        closeTransport();
+    }
+
+    private void closeTransport() throws IOException {
+        if (socket != null) {
+            socket.close();
+        } else {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package client;
+
+import common.BinaryCodec;
+import common.Protocol;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Looks words up through the server's UDP listener, which saves the TCP handshake
+ * for one-off SEARCH requests. An unanswered request is resent with a growing
+ * timeout. When the server answers USE_TCP, or UDP gets no answer at all, the
+ * lookup falls back to a TCP connection if a TCP port was given.
+ *
+ * Only SEARCH is available over UDP; changes to the dictionary need a
+ * {@link ServerConnection}.
+ */
+public class UdpLookup implements Closeable {
+    private static final int ATTEMPTS = 3;
+    private static final int INITIAL_TIMEOUT_MS = 250; // doubled for every resend
+    private static final int RECEIVE_BUFFER_SIZE = 2048;
+
+    private final DatagramSocket socket;
+    private final String serverAddress;
+    private final int tcpPort;
+    private final byte[] receiveBuffer = new byte[RECEIVE_BUFFER_SIZE];
+    // random start so a late answer meant for an earlier process is not taken as ours
+    private long nextRequestId = ThreadLocalRandom.current().nextLong(1L << 32);
+
+    public UdpLookup(String serverAddress, int udpPort) throws IOException {
+        this(serverAddress, udpPort, 0);
+    }
+
+    /**
+     * @param tcpPort the server's TCP port for falling back, 0 to never fall back
+     */
+    public UdpLookup(String serverAddress, int udpPort, int tcpPort) throws IOException {
+        this.serverAddress = serverAddress;
+        this.tcpPort = tcpPort;
+        this.socket = new DatagramSocket();
+        // only accept datagrams from the server
+        socket.connect(new InetSocketAddress(serverAddress, udpPort));
+    }
+
+    /**
+     * Searches for a word.
+     *
+     * @return the server's response; USE_TCP only when there is no TCP port to fall back to
+     * @throws SocketTimeoutException if UDP got no answer and there is no TCP port to fall back to
+     */
+    public synchronized Protocol.Message search(String word) throws IOException {
+        Protocol.Message response = exchange(Protocol.createSearchRequest(word));
+        if (tcpPort > 0 && (response == null || Protocol.USE_TCP.equals(response.getStatus()))) {
+            try (ServerConnection connection = new ServerConnection(serverAddress, tcpPort)) {
+                return connection.send(Protocol.createSearchRequest(word));
+            }
+        }
+        if (response == null) {
+            throw new SocketTimeoutException("No answer from server over UDP");
+        }
+        return response;
+    }
+
+    // returns null if the server never answered
+    private Protocol.Message exchange(Protocol.Message request) throws IOException {
+        long requestId = nextRequestId++;
+        request.setRequestId(requestId);
+        byte[] payload = BinaryCodec.encode(request);
+        DatagramPacket packet = new DatagramPacket(payload, payload.length);
+
+        int timeout = INITIAL_TIMEOUT_MS;
+        try {
+            for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                socket.send(packet);
+
+                long deadline = System.currentTimeMillis() + timeout;
+                long remaining;
+                while ((remaining = deadline - System.currentTimeMillis()) > 0) {
+                    DatagramPacket reply = new DatagramPacket(receiveBuffer, receiveBuffer.length);
+                    socket.setSoTimeout((int) remaining);
+                    try {
+                        socket.receive(reply);
+                    } catch (SocketTimeoutException e) {
+                        break;
+                    }
+
+                    Protocol.Message response;
+                    try {
+                        response = BinaryCodec.decode(receiveBuffer, 0, reply.getLength());
+                    } catch (IOException e) {
+                        continue; // not a valid response
+                    }
+                    // an answer to an earlier resend is as good as any
+                    if (response.getRequestId() != null && response.getRequestId() == requestId) {
+                        return response;
+                    }
+                }
+                timeout *= 2;
+            }
+        } catch (PortUnreachableException e) {
+            return null; // nothing listens for UDP on that port
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        socket.close();
+    }
+
+    /**
+     * Looks up one word from the command line.
+     * Usage: java client.UdpLookup <server-address> <udp-port> <word> [tcp-port]
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java client.UdpLookup <server-address> <udp-port> <word> [tcp-port]");
+            return;
+        }
+
+        try (UdpLookup lookup = new UdpLookup(args[0], Integer.parseInt(args[1]),
+                args.length > 3 ? Integer.parseInt(args[3]) : 0)) {
+            Protocol.Message response = lookup.search(args[2]);
+            if (Protocol.SUCCESS.equals(response.getStatus())) {
+                for (String meaning : response.getResults()) {
+                    System.out.println(meaning);
+                }
+            } else {
+                System.out.println(response.getStatus()
+                        + (response.getErrorMessage() != null ? ": " + response.getErrorMessage() : ""));
+                System.exit(1);
+            }
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Lookup failed: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
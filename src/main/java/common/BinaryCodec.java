@@ -0,0 +1,359 @@
+package common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact length-prefixed binary encoding of {@link Protocol.Message}.
+ *
+ * A client asks for it by sending {@link #HANDSHAKE} as the first byte of the
+ * connection. A server that supports it answers with the same byte; anything
+ * else means the connection stays on JSON lines.
+ *
+ * Frame layout: a 4-byte big-endian payload length followed by the payload.
+ * When the top bit of the length is set the payload is zlib-compressed.
+ * The uncompressed payload is
+ * <pre>
+ *   u8 operation code, u8 status code, u8 field flags
+ *   [literal operation] [literal status]   only when the code is LITERAL
+ *   [i64 request id] [word]                 only when flagged
+ *   varint param count, params
+ *   varint result count, results
+ *   [varint item count, items]              only when flagged, each a varint length and a nested payload
+ *                                           that has no items of its own
+ *   [error message]                         only when flagged
+ *   [varint retry after millis]             only when flagged
+ *   [varint suggestion count, suggestions]  only when flagged
+ * </pre>
+ * Strings are a varint byte length followed by UTF-8 bytes. Strings in the
+ * param and result lists store the length plus one, so 0 can stand for null.
+ */
+public class BinaryCodec {
+    // first byte sent by a client that wants the binary codec, echoed by the server on accept
+    public static final int HANDSHAKE = 0xB1;
+    // server answer when it only speaks JSON lines
+    public static final int HANDSHAKE_DECLINED = 0x00;
+
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+    private static final int COMPRESSED_FLAG = 0x80000000;
+
+    // code 0 means the field is absent, LITERAL means the string follows in the payload
+    private static final int ABSENT = 0;
+    private static final int LITERAL = 0xFF;
+
+    // index in the table is the wire code; never reorder, only append
+    private static final String[] OPERATIONS = {
+        null, Protocol.SEARCH, Protocol.ADD, Protocol.REMOVE, Protocol.ADD_MEANING, Protocol.UPDATE_MEANING,
+        Protocol.BATCH, Protocol.COMPRESS, Protocol.EXPORT, Protocol.PING, Protocol.PONG,
+        Protocol.NOTICE, Protocol.PREFIX, Protocol.SUGGEST, Protocol.FIND, Protocol.CONTAINS,
+        Protocol.PATTERN
+    };
+    private static final String[] STATUSES = {
+        null, Protocol.SUCCESS, Protocol.WORD_NOT_FOUND, Protocol.MEANING_NOT_FOUND, Protocol.DUPLICATE, Protocol.ERROR,
+        Protocol.BUSY, Protocol.THROTTLED, Protocol.RECONNECT, Protocol.USE_TCP
+    };
+
+    private static final int FLAG_WORD = 1;
+    private static final int FLAG_REQUEST_ID = 2;
+    private static final int FLAG_ERROR_MESSAGE = 4;
+    private static final int FLAG_ITEMS = 8;
+    private static final int FLAG_RETRY_AFTER = 16;
+    private static final int FLAG_SUGGESTIONS = 32;
+
+    private BinaryCodec() {
+    }
+
+    /**
+     * Writes one length-prefixed frame. The caller is responsible for flushing.
+     */
+    public static void write(Protocol.Message message, DataOutputStream out) throws IOException {
+        write(message, out, null, 0);
+    }
+
+    /**
+     * Writes one frame, compressing payloads larger than the threshold when a
+     * compressor is given.
+     */
+    public static void write(Protocol.Message message, DataOutputStream out,
+                             Compressor compressor, int threshold) throws IOException {
+        byte[] payload = encode(message);
+        if (compressor != null && payload.length > threshold) {
+            byte[] compressed = compressor.compress(payload, 0, payload.length);
+            out.writeInt(compressed.length | COMPRESSED_FLAG);
+            out.write(compressed);
+        } else {
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+    }
+
+    /**
+     * Reads one length-prefixed frame.
+     *
+     * @return the decoded message, or null if the stream ended cleanly before a frame
+     */
+    public static Protocol.Message read(DataInputStream in) throws IOException {
+        return read(in, null);
+    }
+
+    /**
+     * Tells whether the bytes in buffer[offset, offset + length) start with a complete frame.
+     */
+    public static boolean hasCompleteFrame(byte[] buffer, int offset, int length) {
+        if (length < 4) {
+            return false;
+        }
+        int frameLength = ((buffer[offset] & 0xFF) << 24 | (buffer[offset + 1] & 0xFF) << 16
+                | (buffer[offset + 2] & 0xFF) << 8 | (buffer[offset + 3] & 0xFF)) & ~COMPRESSED_FLAG;
+        return length - 4 >= frameLength;
+    }
+
+    /**
+     * Reads one frame, inflating it with the given compressor if it is compressed.
+     */
+    public static Protocol.Message read(DataInputStream in, Compressor compressor) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        boolean compressed = (length & COMPRESSED_FLAG) != 0;
+        length &= ~COMPRESSED_FLAG;
+        if (length > MAX_FRAME_SIZE || (compressed && compressor == null)) {
+            throw new IOException("Invalid frame length: " + length);
+        }
+
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        if (compressed) {
+            payload = compressor.decompress(payload, 0, length, MAX_FRAME_SIZE);
+            return decode(payload, 0, payload.length);
+        }
+        return decode(payload, 0, length);
+    }
+
+    public static byte[] encode(Protocol.Message message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        encode(message, out);
+        return out.toByteArray();
+    }
+
+    private static void encode(Protocol.Message message, ByteArrayOutputStream out) {
+        int operationCode = codeOf(OPERATIONS, message.getOperation());
+        int statusCode = codeOf(STATUSES, message.getStatus());
+        int flags = 0;
+        if (message.getWord() != null) flags |= FLAG_WORD;
+        if (message.getRequestId() != null) flags |= FLAG_REQUEST_ID;
+        if (message.getErrorMessage() != null) flags |= FLAG_ERROR_MESSAGE;
+        if (!message.getItems().isEmpty()) flags |= FLAG_ITEMS;
+        if (message.getRetryAfterMillis() != null) flags |= FLAG_RETRY_AFTER;
+        if (!message.getSuggestions().isEmpty()) flags |= FLAG_SUGGESTIONS;
+
+        out.write(operationCode);
+        out.write(statusCode);
+        out.write(flags);
+
+        if (operationCode == LITERAL) writeString(out, message.getOperation());
+        if (statusCode == LITERAL) writeString(out, message.getStatus());
+        if (message.getRequestId() != null) writeLong(out, message.getRequestId());
+        if (message.getWord() != null) writeString(out, message.getWord());
+
+        writeStrings(out, message.getParams());
+        writeStrings(out, message.getResults());
+
+        if ((flags & FLAG_ITEMS) != 0) {
+            writeVarInt(out, message.getItems().size());
+            for (Protocol.Message item : message.getItems()) {
+                byte[] payload = encode(item);
+                writeVarInt(out, payload.length);
+                out.write(payload, 0, payload.length);
+            }
+        }
+
+        if (message.getErrorMessage() != null) writeString(out, message.getErrorMessage());
+        if (message.getRetryAfterMillis() != null) writeVarInt(out, (int) Math.min(Integer.MAX_VALUE, Math.max(0, message.getRetryAfterMillis())));
+        if ((flags & FLAG_SUGGESTIONS) != 0) writeStrings(out, message.getSuggestions());
+    }
+
+    public static Protocol.Message decode(byte[] buffer, int offset, int length) throws IOException {
+        return decode(buffer, offset, length, false);
+    }
+
+    // items are only read at the top level, so a payload cannot recurse the stack away
+    private static Protocol.Message decode(byte[] buffer, int offset, int length, boolean item) throws IOException {
+        Reader in = new Reader(buffer, offset, length);
+        Protocol.Message message = new Protocol.Message();
+
+        int operationCode = in.readByte();
+        int statusCode = in.readByte();
+        int flags = in.readByte();
+
+        message.setOperation(operationCode == LITERAL ? in.readString() : valueOf(OPERATIONS, operationCode));
+        message.setStatus(statusCode == LITERAL ? in.readString() : valueOf(STATUSES, statusCode));
+        if ((flags & FLAG_REQUEST_ID) != 0) message.setRequestId(in.readLong());
+        if ((flags & FLAG_WORD) != 0) message.setWord(in.readString());
+
+        message.setParams(in.readStrings());
+        message.setResults(in.readStrings());
+
+        if ((flags & FLAG_ITEMS) != 0) {
+            if (item) {
+                throw new IOException("Items cannot be nested");
+            }
+            int count = in.readVarInt();
+            for (int i = 0; i < count; i++) {
+                int itemLength = in.readVarInt();
+                message.addItem(decode(buffer, in.skip(itemLength), itemLength, true));
+            }
+        }
+
+        if ((flags & FLAG_ERROR_MESSAGE) != 0) message.setErrorMessage(in.readString());
+        if ((flags & FLAG_RETRY_AFTER) != 0) message.setRetryAfterMillis((long) in.readVarInt());
+        if ((flags & FLAG_SUGGESTIONS) != 0) message.setSuggestions(in.readStrings());
+
+        return message;
+    }
+
+    private static int codeOf(String[] table, String value) {
+        if (value == null) {
+            return ABSENT;
+        }
+        for (int i = 1; i < table.length; i++) {
+            if (table[i].equals(value)) {
+                return i;
+            }
+        }
+        return LITERAL;
+    }
+
+    private static String valueOf(String[] table, int code) throws IOException {
+        if (code >= table.length) {
+            throw new IOException("Unknown code: " + code);
+        }
+        return table[code];
+    }
+
+    private static void writeStrings(ByteArrayOutputStream out, List<String> values) {
+        writeVarInt(out, values.size());
+        for (String value : values) {
+            if (value == null) {
+                writeVarInt(out, 0);
+            } else {
+                writeString(out, value, 1);
+            }
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        writeString(out, value, 0);
+    }
+
+    // the length is written plus the given bias
+    private static void writeString(ByteArrayOutputStream out, String value, int lengthBias) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length + lengthBias);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift) & 0xFF);
+        }
+    }
+
+    /**
+     * Bounds-checked cursor over one frame payload.
+     */
+    private static class Reader {
+        private final byte[] buffer;
+        private final int end;
+        private int position;
+
+        Reader(byte[] buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        int readByte() throws IOException {
+            if (position >= end) {
+                throw new IOException("Truncated frame");
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        int readVarInt() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        // returns the offset of the skipped region
+        int skip(int length) throws IOException {
+            if (length < 0 || length > end - position) {
+                throw new IOException("Truncated frame");
+            }
+            int start = position;
+            position += length;
+            return start;
+        }
+
+        long readLong() throws IOException {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        String readString() throws IOException {
+            return readString(readVarInt());
+        }
+
+        String readString(int length) throws IOException {
+            if (length < 0 || length > end - position) {
+                throw new IOException("Truncated frame");
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        List<String> readStrings() throws IOException {
+            int count = readVarInt();
+            if (count < 0 || count > end - position) {
+                throw new IOException("Invalid list length: " + count);
+            }
+            if (count == 0) {
+                return null; // absent lists are left unallocated
+            }
+            List<String> values = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int biasedLength = readVarInt();
+                values.add(biasedLength == 0 ? null : readString(biasedLength - 1));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package common;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the wire codecs on typical messages: the bytes each message takes
+ * and the time to encode and decode it with Gson, the streaming JSON codec and
+ * the binary codec.
+ *
+ * Usage: java common.CodecBenchmark [iterations]
+ */
+public class CodecBenchmark {
+    private static volatile Object sink; // keeps the JIT from dropping the work
+
+    public static void main(String[] args) throws IOException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        Protocol.Message search = Protocol.createSearchRequest("apple");
+        search.setRequestId(42L);
+
+        Protocol.Message found = Protocol.createSearchRequest("apple");
+        found.setRequestId(42L);
+        found.setStatus(Protocol.SUCCESS);
+        found.addResult("A round fruit with red or green skin");
+        found.addResult("The tree bearing such fruit");
+        found.addResult("A New York nickname");
+
+        List<Protocol.Message> lookups = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            lookups.add(Protocol.createSearchRequest("word" + i));
+        }
+        Protocol.Message batch = Protocol.createBatchRequest(lookups);
+
+        System.out.printf("%-16s %-8s %8s %12s %12s%n", "message", "codec", "bytes", "encode ns", "decode ns");
+        run("search request", search, iterations);
+        run("search response", found, iterations);
+        run("batch of 100", batch, Math.max(1, iterations / 100));
+    }
+
+    private static void run(String name, Protocol.Message message, int iterations) throws IOException {
+        JsonCodec json = new JsonCodec();
+
+        byte[] gsonBytes = Protocol.toJson(message).getBytes(StandardCharsets.UTF_8);
+        byte[] jsonBytes = json.encode(message);
+        byte[] binaryBytes = BinaryCodec.encode(message);
+
+        // two rounds, the first one warms the JIT up
+        for (int round = 0; round < 2; round++) {
+            boolean report = round == 1;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink = Protocol.toJson(message);
+            }
+            long gsonEncode = System.nanoTime() - start;
+            String gsonLine = new String(gsonBytes, StandardCharsets.UTF_8);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink = Protocol.fromJson(gsonLine);
+            }
+            long gsonDecode = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink = json.encode(message);
+            }
+            long jsonEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink = json.decode(jsonBytes, 0, jsonBytes.length - 1); // without the newline
+            }
+            long jsonDecode = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink = BinaryCodec.encode(message);
+            }
+            long binaryEncode = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sink = BinaryCodec.decode(binaryBytes, 0, binaryBytes.length);
+            }
+            long binaryDecode = System.nanoTime() - start;
+
+            if (report) {
+                print(name, "gson", gsonBytes.length + 1, gsonEncode, gsonDecode, iterations);
+                print(name, "json", jsonBytes.length, jsonEncode, jsonDecode, iterations);
+                // the binary frame adds a four-byte length
+                print(name, "binary", binaryBytes.length + 4, binaryEncode, binaryDecode, iterations);
+            }
+        }
+    }
+
+    private static void print(String name, String codec, int bytes, long encodeNanos, long decodeNanos,
+                              int iterations) {
+        System.out.printf("%-16s %-8s %8d %12.0f %12.0f%n", name, codec, bytes,
+                encodeNanos / (double) iterations, decodeNanos / (double) iterations);
+    }
+}
@@ -0,0 +1,117 @@
+package common;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per-connection response compression with the JDK's Deflater and Inflater.
+ *
+ * The zlib streams are created on first use and reused for every message, so a
+ * connection that never sees a large response never allocates them. Compression
+ * and decompression may run on different threads. Process-wide counters record
+ * the compression ratio and the CPU time spent compressing.
+ */
+public class Compressor {
+    // responses at or below this many bytes are sent uncompressed
+    public static final int DEFAULT_THRESHOLD = 512;
+    public static final int MIN_THRESHOLD = 64;
+
+    // process-wide metrics
+    private static final AtomicLong compressedMessages = new AtomicLong(0);
+    private static final AtomicLong rawBytes = new AtomicLong(0);
+    private static final AtomicLong compressedBytes = new AtomicLong(0);
+    private static final AtomicLong compressNanos = new AtomicLong(0);
+
+    private final Object deflateLock = new Object();
+    private final Object inflateLock = new Object();
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] deflateBuffer = new byte[1024];
+
+    /**
+     * Compresses a region of bytes.
+     *
+     * @return a new array holding the complete zlib stream
+     */
+    public byte[] compress(byte[] data, int offset, int length) {
+        long start = System.nanoTime();
+        synchronized (deflateLock) {
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+            }
+            deflater.reset();
+            deflater.setInput(data, offset, length);
+            deflater.finish();
+
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == deflateBuffer.length) {
+                    deflateBuffer = Arrays.copyOf(deflateBuffer, deflateBuffer.length * 2);
+                }
+                size += deflater.deflate(deflateBuffer, size, deflateBuffer.length - size);
+            }
+
+            compressedMessages.incrementAndGet();
+            rawBytes.addAndGet(length);
+            compressedBytes.addAndGet(size);
+            compressNanos.addAndGet(System.nanoTime() - start);
+            return Arrays.copyOf(deflateBuffer, size);
+        }
+    }
+
+    /**
+     * Decompresses a complete zlib stream.
+     *
+     * @param maxSize the largest accepted decompressed size
+     */
+    public byte[] decompress(byte[] data, int offset, int length, int maxSize) throws IOException {
+        synchronized (inflateLock) {
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            inflater.reset();
+            inflater.setInput(data, offset, length);
+
+            byte[] buffer = new byte[Math.max(256, Math.min(maxSize, length * 4))];
+            int size = 0;
+            try {
+                while (!inflater.finished()) {
+                    if (size == buffer.length) {
+                        if (buffer.length >= maxSize) {
+                            throw new IOException("Decompressed message exceeds " + maxSize + " bytes");
+                        }
+                        buffer = Arrays.copyOf(buffer, Math.min(maxSize, buffer.length * 2));
+                    }
+                    int inflated = inflater.inflate(buffer, size, buffer.length - size);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("Truncated compressed message");
+                    }
+                    size += inflated;
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Corrupt compressed message: " + e.getMessage(), e);
+            }
+            return size == buffer.length ? buffer : Arrays.copyOf(buffer, size);
+        }
+    }
+
+    // Metrics across all connections in this process
+    public static long getCompressedMessageCount() {
+        return compressedMessages.get();
+    }
+
+    // compressed size as a fraction of the original size
+    public static double getCompressionRatio() {
+        long raw = rawBytes.get();
+        return raw == 0 ? 1.0 : (double) compressedBytes.get() / raw;
+    }
+
+    public static long getAverageCompressMicros() {
+        long messages = compressedMessages.get();
+        return messages == 0 ? 0 : compressNanos.get() / messages / 1000;
+    }
+}
@@ -0,0 +1,791 @@
+package common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Streaming encoder and decoder for the JSON line protocol, wire-compatible with
+ * {@link Protocol#toJson} and {@link Protocol#fromJson}.
+ *
+ * One instance belongs to one connection and reuses its input, line and output
+ * buffers for every message. Requests are parsed straight from the received
+ * bytes and responses are encoded straight into the output buffer, so the only
+ * per-message allocations are the field values themselves. Operation and
+ * status values are mapped back to the shared protocol constants. Reading and
+ * writing use separate state, so one thread may read while another writes, but
+ * each direction must be confined to one thread at a time.
+ *
+ * A compressed message is sent as a line starting with {@code ~} followed by the
+ * Base64 of the zlib-compressed JSON. Decoding always accepts such lines;
+ * encoding produces them only after {@link #enableCompression} is called.
+ */
+public class JsonCodec {
+    private static final int MAX_LINE_SIZE = 16 * 1024 * 1024;
+
+    // values that are returned as shared constants instead of new strings
+    private static final String[] KNOWN_VALUES = {
+        Protocol.SEARCH, Protocol.ADD, Protocol.REMOVE, Protocol.ADD_MEANING, Protocol.UPDATE_MEANING, Protocol.BATCH,
+        Protocol.COMPRESS, Protocol.EXPORT, Protocol.PING, Protocol.PONG, Protocol.NOTICE,
+        Protocol.PREFIX, Protocol.SUGGEST, Protocol.FIND, Protocol.CONTAINS, Protocol.PATTERN,
+        Protocol.SUCCESS, Protocol.WORD_NOT_FOUND, Protocol.MEANING_NOT_FOUND, Protocol.DUPLICATE, Protocol.ERROR,
+        Protocol.BUSY, Protocol.THROTTLED, Protocol.RECONNECT, Protocol.USE_TCP
+    };
+
+    private static final byte COMPRESSED_MARKER = '~';
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final InputStream in;
+    private final OutputStream out;
+
+    // input buffering, owned by the codec so raw bytes can follow a message
+    private final byte[] input = new byte[8192];
+    private int inputPosition;
+    private int inputLimit;
+
+    // current line and parse cursor
+    private byte[] line = new byte[512];
+    private byte[] source;
+    private int position;
+    private int end;
+
+    // output buffer
+    private byte[] output = new byte[512];
+    private int outputLength;
+
+    private final StringBuilder scratch = new StringBuilder();
+
+    // compression of written messages, off until enabled
+    private final Compressor compressor;
+    private int compressionThreshold = -1;
+
+    /**
+     * Creates a codec bound to a connection's streams. Either may be null when
+     * the codec is only used in one direction or for frame-level encoding.
+     */
+    public JsonCodec(InputStream in, OutputStream out) {
+        this(in, out, new Compressor());
+    }
+
+    public JsonCodec(InputStream in, OutputStream out, Compressor compressor) {
+        this.in = in;
+        this.out = out;
+        this.compressor = compressor;
+    }
+
+    public JsonCodec() {
+        this(null, null);
+    }
+
+    /**
+     * Compresses written messages whose encoding is larger than the threshold.
+     */
+    public void enableCompression(int threshold) {
+        compressionThreshold = Math.max(Compressor.MIN_THRESHOLD, threshold);
+    }
+
+    /**
+     * Reads the next message line into the given message, clearing it first.
+     *
+     * @return false at end of stream
+     */
+    public boolean read(Protocol.Message into) throws IOException {
+        while (true) {
+            int length = readLine();
+            if (length < 0) {
+                return false;
+            }
+            if (parse(line, 0, length, into)) {
+                return true;
+            }
+            // blank line, keep reading
+        }
+    }
+
+    /**
+     * Reads the next message line.
+     *
+     * @return the message, or null at end of stream
+     */
+    public Protocol.Message read() throws IOException {
+        Protocol.Message message = new Protocol.Message();
+        return read(message) ? message : null;
+    }
+
+    /**
+     * Reads bytes that follow the last message line on the stream, for example a
+     * raw payload announced by a response.
+     */
+    public int readRaw(byte[] buffer, int offset, int length) throws IOException {
+        if (inputPosition < inputLimit) {
+            int count = Math.min(length, inputLimit - inputPosition);
+            System.arraycopy(input, inputPosition, buffer, offset, count);
+            inputPosition += count;
+            return count;
+        }
+        return in.read(buffer, offset, length);
+    }
+
+    /**
+     * Tells whether a complete message line has already been received and buffered,
+     * so the next {@link #read(Protocol.Message)} will not block. Never touches the stream.
+     */
+    public boolean hasBufferedLine() {
+        for (int i = inputPosition; i < inputLimit; i++) {
+            if (input[i] == '\n') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Encodes a message followed by a newline into the output stream. The caller
+     * decides when to flush.
+     */
+    public void write(Protocol.Message message) throws IOException {
+        outputLength = 0;
+        encodeMessage(message);
+        if (compressionThreshold >= 0 && outputLength > compressionThreshold) {
+            out.write(compressLine(output, outputLength, compressor));
+            return;
+        }
+        appendByte('\n');
+        out.write(output, 0, outputLength);
+    }
+
+    /**
+     * Turns an encoded message into a compressed line, including the newline.
+     *
+     * @param line the encoded message, with or without its trailing newline
+     */
+    public static byte[] compressLine(byte[] line, int length, Compressor compressor) {
+        if (length > 0 && line[length - 1] == '\n') {
+            length--;
+        }
+        byte[] encoded = Base64.getEncoder().encode(compressor.compress(line, 0, length));
+        byte[] compressedLine = new byte[encoded.length + 2];
+        compressedLine[0] = COMPRESSED_MARKER;
+        System.arraycopy(encoded, 0, compressedLine, 1, encoded.length);
+        compressedLine[compressedLine.length - 1] = '\n';
+        return compressedLine;
+    }
+
+    /**
+     * Encodes a message followed by a newline into a new byte array.
+     */
+    public byte[] encode(Protocol.Message message) {
+        outputLength = 0;
+        encodeMessage(message);
+        appendByte('\n');
+        byte[] bytes = new byte[outputLength];
+        System.arraycopy(output, 0, bytes, 0, outputLength);
+        return bytes;
+    }
+
+    /**
+     * Decodes one line of UTF-8 JSON.
+     *
+     * @return the message, or null if the line is blank
+     */
+    public Protocol.Message decode(byte[] buffer, int offset, int length) throws IOException {
+        Protocol.Message message = new Protocol.Message();
+        return parse(buffer, offset, offset + length, message) ? message : null;
+    }
+
+    // ---------------------------------------------------------------- reading
+
+    // fills line[0, length) with the next line without its terminator, -1 at end of stream
+    private int readLine() throws IOException {
+        int length = 0;
+        while (true) {
+            if (inputPosition == inputLimit) {
+                int read = in.read(input, 0, input.length);
+                if (read == -1) {
+                    return length > 0 ? length : -1;
+                }
+                inputPosition = 0;
+                inputLimit = read;
+            }
+
+            int start = inputPosition;
+            while (inputPosition < inputLimit && input[inputPosition] != '\n') {
+                inputPosition++;
+            }
+            int count = inputPosition - start;
+            if (length + count > line.length) {
+                if (length + count > MAX_LINE_SIZE) {
+                    throw new IOException("Message exceeds " + MAX_LINE_SIZE + " bytes");
+                }
+                byte[] grown = new byte[Math.max(line.length * 2, length + count)];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            System.arraycopy(input, start, line, length, count);
+            length += count;
+
+            if (inputPosition < inputLimit) {
+                inputPosition++; // consume '\n'
+                return length;
+            }
+        }
+    }
+
+    // returns false for a blank line
+    private boolean parse(byte[] buffer, int offset, int limit, Protocol.Message into) throws IOException {
+        source = buffer;
+        position = offset;
+        end = limit;
+
+        into.reset();
+        skipWhitespace();
+        if (position == end) {
+            return false;
+        }
+
+        if (source[position] == COMPRESSED_MARKER) {
+            byte[] json = decompressLine(position + 1);
+            source = json;
+            position = 0;
+            end = json.length;
+        }
+
+        parseObject(into, false);
+        return true;
+    }
+
+    private byte[] decompressLine(int start) throws IOException {
+        int stop = end;
+        while (stop > start && (source[stop - 1] == '\r' || source[stop - 1] == ' ')) {
+            stop--;
+        }
+        try {
+            byte[] compressed = Base64.getDecoder().decode(Arrays.copyOfRange(source, start, stop));
+            return compressor.decompress(compressed, 0, compressed.length, MAX_LINE_SIZE);
+        } catch (IllegalArgumentException e) {
+            throw malformed("invalid compressed line");
+        }
+    }
+
+    // items are only read at the top level; a BATCH never nests, and refusing
+    // nested items keeps a hostile line from recursing the stack away
+    private void parseObject(Protocol.Message into, boolean item) throws IOException {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return;
+        }
+
+        while (true) {
+            skipWhitespace();
+            int keyStart = position + 1;
+            int keyLength = skipString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            readField(keyStart, keyLength, into, item);
+            skipWhitespace();
+
+            byte next = next();
+            if (next == '}') {
+                return;
+            }
+            if (next != ',') {
+                throw malformed("expected ',' or '}'");
+            }
+        }
+    }
+
+    private void readField(int keyStart, int keyLength, Protocol.Message into, boolean item) throws IOException {
+        if (keyEquals(keyStart, keyLength, "operation")) {
+            into.setOperation(readNullableString());
+        } else if (keyEquals(keyStart, keyLength, "word")) {
+            into.setWord(readNullableString());
+        } else if (keyEquals(keyStart, keyLength, "status")) {
+            into.setStatus(readNullableString());
+        } else if (keyEquals(keyStart, keyLength, "requestId")) {
+            into.setRequestId(readNullableLong());
+        } else if (keyEquals(keyStart, keyLength, "params")) {
+            into.setParams(readStringList());
+        } else if (keyEquals(keyStart, keyLength, "results")) {
+            into.setResults(readStringList());
+        } else if (keyEquals(keyStart, keyLength, "items")) {
+            if (item) {
+                throw malformed("items cannot be nested");
+            }
+            into.setItems(readMessageList());
+        } else if (keyEquals(keyStart, keyLength, "errorMessage")) {
+            into.setErrorMessage(readNullableString());
+        } else if (keyEquals(keyStart, keyLength, "retryAfterMillis")) {
+            into.setRetryAfterMillis(readNullableLong());
+        } else if (keyEquals(keyStart, keyLength, "suggestions")) {
+            into.setSuggestions(readStringList());
+        } else {
+            skipValue();
+        }
+    }
+
+    private boolean keyEquals(int start, int length, String key) {
+        if (length != key.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (source[start + i] != key.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readNullableString() throws IOException {
+        if (consumeNull()) {
+            return null;
+        }
+        return readString();
+    }
+
+    private Long readNullableLong() throws IOException {
+        if (consumeNull()) {
+            return null;
+        }
+        int start = position;
+        while (position < end && "+-0123456789.eE".indexOf(source[position]) >= 0) {
+            position++;
+        }
+        if (position == start) {
+            throw malformed("expected a number");
+        }
+
+        // fast path for plain integers
+        long value = 0;
+        boolean negative = source[start] == '-';
+        boolean integral = true;
+        for (int i = negative ? start + 1 : start; i < position; i++) {
+            byte b = source[i];
+            if (b < '0' || b > '9') {
+                integral = false;
+                break;
+            }
+            value = value * 10 + (b - '0');
+        }
+        if (integral) {
+            return negative ? -value : value;
+        }
+        try {
+            return (long) Double.parseDouble(new String(source, start, position - start, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            throw malformed("invalid number");
+        }
+    }
+
+    // absent lists stay null so the message allocates nothing for them
+    private List<String> readStringList() throws IOException {
+        if (consumeNull()) {
+            return null;
+        }
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return null;
+        }
+
+        List<String> values = new ArrayList<>(4);
+        while (true) {
+            skipWhitespace();
+            values.add(readNullableString());
+            skipWhitespace();
+            byte next = next();
+            if (next == ']') {
+                return values;
+            }
+            if (next != ',') {
+                throw malformed("expected ',' or ']'");
+            }
+        }
+    }
+
+    private List<Protocol.Message> readMessageList() throws IOException {
+        if (consumeNull()) {
+            return null;
+        }
+        expect('[');
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return null;
+        }
+
+        List<Protocol.Message> items = new ArrayList<>();
+        while (true) {
+            skipWhitespace();
+            Protocol.Message item = new Protocol.Message();
+            parseObject(item, true);
+            items.add(item);
+            skipWhitespace();
+            byte next = next();
+            if (next == ']') {
+                return items;
+            }
+            if (next != ',') {
+                throw malformed("expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        int start = position;
+        boolean ascii = true;
+        while (position < end) {
+            byte b = source[position];
+            if (b == '"') {
+                int length = position - start;
+                position++;
+                if (ascii) {
+                    String known = knownValue(start, length);
+                    return known != null ? known : new String(source, start, length, StandardCharsets.ISO_8859_1);
+                }
+                return new String(source, start, length, StandardCharsets.UTF_8);
+            }
+            if (b == '\\') {
+                position = start;
+                return readEscapedString();
+            }
+            if (b < 0) {
+                ascii = false;
+            }
+            position++;
+        }
+        throw malformed("unterminated string");
+    }
+
+    // slow path: decode UTF-8 and escapes into the scratch builder
+    private String readEscapedString() throws IOException {
+        scratch.setLength(0);
+        while (position < end) {
+            int b = source[position++] & 0xFF;
+            if (b == '"') {
+                return scratch.toString();
+            }
+            if (b == '\\') {
+                readEscape();
+            } else if (b < 0x80) {
+                scratch.append((char) b);
+            } else {
+                readUtf8(b);
+            }
+        }
+        throw malformed("unterminated string");
+    }
+
+    private void readEscape() throws IOException {
+        byte escaped = next();
+        switch (escaped) {
+            case '"': scratch.append('"'); break;
+            case '\\': scratch.append('\\'); break;
+            case '/': scratch.append('/'); break;
+            case '\'': scratch.append('\''); break;
+            case 'b': scratch.append('\b'); break;
+            case 'f': scratch.append('\f'); break;
+            case 'n': scratch.append('\n'); break;
+            case 'r': scratch.append('\r'); break;
+            case 't': scratch.append('\t'); break;
+            case 'u':
+                if (end - position < 4) {
+                    throw malformed("truncated unicode escape");
+                }
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(source[position++], 16);
+                    if (digit < 0) {
+                        throw malformed("invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                scratch.append((char) value);
+                break;
+            default:
+                throw malformed("invalid escape");
+        }
+    }
+
+    private void readUtf8(int first) throws IOException {
+        int extra;
+        int codePoint;
+        if ((first & 0xE0) == 0xC0) {
+            extra = 1;
+            codePoint = first & 0x1F;
+        } else if ((first & 0xF0) == 0xE0) {
+            extra = 2;
+            codePoint = first & 0x0F;
+        } else if ((first & 0xF8) == 0xF0) {
+            extra = 3;
+            codePoint = first & 0x07;
+        } else {
+            scratch.append('\uFFFD');
+            return;
+        }
+        if (end - position < extra) {
+            throw malformed("truncated UTF-8 sequence");
+        }
+        for (int i = 0; i < extra; i++) {
+            codePoint = (codePoint << 6) | (source[position++] & 0x3F);
+        }
+        scratch.appendCodePoint(codePoint);
+    }
+
+    private String knownValue(int start, int length) {
+        for (String value : KNOWN_VALUES) {
+            if (keyEquals(start, length, value)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    private boolean consumeNull() {
+        if (end - position >= 4 && source[position] == 'n' && source[position + 1] == 'u'
+                && source[position + 2] == 'l' && source[position + 3] == 'l') {
+            position += 4;
+            return true;
+        }
+        return false;
+    }
+
+    // skips a string and returns its raw length, position ends after the closing quote
+    private int skipString() throws IOException {
+        expect('"');
+        int start = position;
+        while (position < end) {
+            byte b = source[position++];
+            if (b == '\\') {
+                position++;
+            } else if (b == '"') {
+                return position - start - 1;
+            }
+        }
+        throw malformed("unterminated string");
+    }
+
+    private void skipValue() throws IOException {
+        byte b = peek();
+        if (b == '"') {
+            skipString();
+        } else if (b == '{' || b == '[') {
+            int depth = 0;
+            do {
+                byte c = peek();
+                if (c == '"') {
+                    skipString();
+                    continue;
+                }
+                if (c == '{' || c == '[') depth++;
+                if (c == '}' || c == ']') depth--;
+                position++;
+            } while (depth > 0);
+        } else {
+            while (position < end && source[position] != ',' && source[position] != '}'
+                    && source[position] != ']') {
+                position++;
+            }
+        }
+    }
+
+    private void skipWhitespace() {
+        while (position < end) {
+            byte b = source[position];
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return;
+            }
+            position++;
+        }
+    }
+
+    private byte peek() throws IOException {
+        if (position >= end) {
+            throw malformed("unexpected end of message");
+        }
+        return source[position];
+    }
+
+    private byte next() throws IOException {
+        byte b = peek();
+        position++;
+        return b;
+    }
+
+    private void expect(char c) throws IOException {
+        if (next() != c) {
+            throw malformed("expected '" + c + "'");
+        }
+    }
+
+    private IOException malformed(String reason) {
+        return new IOException("Malformed JSON message: " + reason + " at offset " + position);
+    }
+
+    // ---------------------------------------------------------------- writing
+
+    // same field order and escaping as Gson, null fields and empty lists are left out
+    private void encodeMessage(Protocol.Message message) {
+        appendByte('{');
+        boolean first = true;
+        first = appendField(first, "operation", message.getOperation());
+        first = appendField(first, "word", message.getWord());
+        first = appendField(first, "status", message.getStatus());
+        if (message.getRequestId() != null) {
+            first = appendKey(first, "requestId");
+            appendAscii(Long.toString(message.getRequestId()));
+        }
+        first = appendList(first, "params", message.getParams());
+        first = appendList(first, "results", message.getResults());
+        List<Protocol.Message> items = message.getItems();
+        if (!items.isEmpty()) {
+            first = appendKey(first, "items");
+            appendByte('[');
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    appendByte(',');
+                }
+                encodeMessage(items.get(i));
+            }
+            appendByte(']');
+        }
+        first = appendField(first, "errorMessage", message.getErrorMessage());
+        if (message.getRetryAfterMillis() != null) {
+            first = appendKey(first, "retryAfterMillis");
+            appendAscii(Long.toString(message.getRetryAfterMillis()));
+        }
+        appendList(first, "suggestions", message.getSuggestions());
+        appendByte('}');
+    }
+
+    private boolean appendField(boolean first, String key, String value) {
+        if (value == null) {
+            return first;
+        }
+        appendKey(first, key);
+        appendString(value);
+        return false;
+    }
+
+    private boolean appendList(boolean first, String key, List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return first;
+        }
+        appendKey(first, key);
+        appendByte('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                appendByte(',');
+            }
+            String value = values.get(i);
+            if (value == null) {
+                appendAscii("null");
+            } else {
+                appendString(value);
+            }
+        }
+        appendByte(']');
+        return false;
+    }
+
+    private boolean appendKey(boolean first, String key) {
+        if (!first) {
+            appendByte(',');
+        }
+        appendByte('"');
+        appendAscii(key);
+        appendByte('"');
+        appendByte(':');
+        return false;
+    }
+
+    private void appendString(String value) {
+        ensureCapacity(value.length() * 3 + 2);
+        output[outputLength++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"': appendEscape('"'); break;
+                    case '\\': appendEscape('\\'); break;
+                    case '\t': appendEscape('t'); break;
+                    case '\b': appendEscape('b'); break;
+                    case '\n': appendEscape('n'); break;
+                    case '\r': appendEscape('r'); break;
+                    case '\f': appendEscape('f'); break;
+                    // Gson escapes these to keep output HTML-safe
+                    case '<': case '>': case '&': case '=': case '\'':
+                        appendUnicodeEscape(c);
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            appendUnicodeEscape(c);
+                        } else {
+                            appendByte(c);
+                        }
+                }
+            } else if (c == '\u2028' || c == '\u2029') {
+                appendUnicodeEscape(c);
+            } else if (c < 0x800) {
+                appendByte(0xC0 | (c >> 6));
+                appendByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendByte(0xF0 | (codePoint >> 18));
+                appendByte(0x80 | ((codePoint >> 12) & 0x3F));
+                appendByte(0x80 | ((codePoint >> 6) & 0x3F));
+                appendByte(0x80 | (codePoint & 0x3F));
+            } else {
+                appendByte(0xE0 | (c >> 12));
+                appendByte(0x80 | ((c >> 6) & 0x3F));
+                appendByte(0x80 | (c & 0x3F));
+            }
+        }
+        appendByte('"');
+    }
+
+    private void appendEscape(char c) {
+        appendByte('\\');
+        appendByte(c);
+    }
+
+    private void appendUnicodeEscape(char c) {
+        appendByte('\\');
+        appendByte('u');
+        appendByte(HEX[(c >> 12) & 0xF]);
+        appendByte(HEX[(c >> 8) & 0xF]);
+        appendByte(HEX[(c >> 4) & 0xF]);
+        appendByte(HEX[c & 0xF]);
+    }
+
+    private void appendAscii(String value) {
+        ensureCapacity(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            output[outputLength++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void appendByte(int b) {
+        ensureCapacity(1);
+        output[outputLength++] = (byte) b;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (outputLength + extra > output.length) {
+            byte[] grown = new byte[Math.max(output.length * 2, outputLength + extra)];
+            System.arraycopy(output, 0, grown, 0, outputLength);
+            output = grown;
+        }
+    }
+}
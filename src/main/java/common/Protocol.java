@@ -3,6 +3,7 @@ package common;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
@@ -14,6 +15,17 @@ public class Protocol {
     public static final String REMOVE = "REMOVE";
     public static final String ADD_MEANING = "ADD_MEANING";
     public static final String UPDATE_MEANING = "UPDATE_MEANING";
+    public static final String BATCH = "BATCH";
+    public static final String COMPRESS = "COMPRESS"; // enable response compression on this connection
+    public static final String EXPORT = "EXPORT";     // stream a snapshot of the whole dictionary
+    public static final String PREFIX = "PREFIX";     // words starting with the given prefix, for autocomplete
+    public static final String SUGGEST = "SUGGEST";   // existing words spelled like the given one
+    public static final String FIND = "FIND";         // words whose meanings contain every term of the query
+    public static final String CONTAINS = "CONTAINS"; // words containing the given fragment
+    public static final String PATTERN = "PATTERN";   // words matching a glob with ? and *
+    public static final String PING = "PING";         // heartbeat, answered with PONG without touching the dictionary
+    public static final String PONG = "PONG";
+    public static final String NOTICE = "NOTICE";     // unsolicited server message, never answers a request
 
     // status codes
     public static final String SUCCESS = "SUCCESS";
@@ -21,6 +33,15 @@ public class Protocol {
     public static final String MEANING_NOT_FOUND = "MEANING_NOT_FOUND";
     public static final String DUPLICATE = "DUPLICATE";
     public static final String ERROR = "ERROR";
+    public static final String BUSY = "BUSY"; // server overloaded, retry after retryAfterMillis
+    public static final String THROTTLED = "THROTTLED"; // client over its rate limit, retry after retryAfterMillis
+    public static final String RECONNECT = "RECONNECT"; // NOTICE status: server is draining, reconnect within retryAfterMillis
+    public static final String USE_TCP = "USE_TCP"; // UDP response: send the request over TCP instead
+
+    // SEARCH parameter asking for suggestions if the word is not found
+    public static final String SEARCH_WITH_SUGGESTIONS = "suggestions";
+    // second PREFIX parameter asking for the meanings of each match
+    public static final String PREFIX_WITH_MEANINGS = "meanings";
 
     private static final Gson gson = new GsonBuilder().create();
 
@@ -29,13 +50,19 @@ public class Protocol {
         private String operation;  // operation type
         private String word;       // key
         private String status;     // response status
+        private Long requestId;    // optional, echoed back so pipelined responses can be matched
+
+        // parameters for operations, allocated on first use
+        private List<String> params;
 
-        // parameters for operations
-        private List<String> params = new ArrayList<>();
+        // results for operations, allocated on first use
+        private List<String> results;
 
-        // results for operations
-        private List<String> results = new ArrayList<>();
+        // sub-requests of a BATCH request, or their per-item responses
+        private List<Message> items;
         private String errorMessage;
+        private Long retryAfterMillis; // BUSY and THROTTLED responses only, how long the client should back off
+        private List<String> suggestions; // SEARCH misses that asked for them, the closest existing words
 
         // default constructor
         public Message() {
@@ -48,21 +75,50 @@ public class Protocol {
         public String getWord() { return word; }
         public void setWord(String word) { this.word = word; }
 
+        public Long getRequestId() { return requestId; }
+        public void setRequestId(Long requestId) { this.requestId = requestId; }
+
         public String getStatus() { return status; }
         public void setStatus(String status) { this.status = status; }
 
-        public List<String> getParams() { return params; }
+        public List<String> getParams() { return params != null ? params : Collections.emptyList(); }
         public void setParams(List<String> params) { this.params = params; }
 
-        public List<String> getResults() { return results; }
+        public List<String> getResults() { return results != null ? results : Collections.emptyList(); }
         public void setResults(List<String> results) { this.results = results; }
 
+        public List<Message> getItems() { return items != null ? items : Collections.emptyList(); }
+        public void setItems(List<Message> items) { this.items = items; }
+
         public String getErrorMessage() { return errorMessage; }
         public void setErrorMessage(String errorMessage) { this.errorMessage = errorMessage; }
 
+        public Long getRetryAfterMillis() { return retryAfterMillis; }
+        public void setRetryAfterMillis(Long retryAfterMillis) { this.retryAfterMillis = retryAfterMillis; }
+
+        public List<String> getSuggestions() { return suggestions != null ? suggestions : Collections.emptyList(); }
+        public void setSuggestions(List<String> suggestions) { this.suggestions = suggestions; }
+
+        // clear every field so the message can be reused for the next request
+        public void reset() {
+            operation = null;
+            word = null;
+            status = null;
+            requestId = null;
+            params = null;
+            results = null;
+            items = null;
+            errorMessage = null;
+            retryAfterMillis = null;
+            suggestions = null;
+        }
+
         // helper methods for adding parameters and results
         public void addParam(String param) {
             if (param != null) {
+                if (this.params == null) {
+                    this.params = new ArrayList<>(2);
+                }
                 this.params.add(param);
             }
         }
@@ -74,8 +130,20 @@ public class Protocol {
             return null;
         }
 
+        public void addItem(Message item) {
+            if (item != null) {
+                if (this.items == null) {
+                    this.items = new ArrayList<>();
+                }
+                this.items.add(item);
+            }
+        }
+
         public void addResult(String result) {
             if (result != null) {
+                if (this.results == null) {
+                    this.results = new ArrayList<>();
+                }
                 this.results.add(result);
             }
         }
@@ -112,6 +180,18 @@ public class Protocol {
         return message;
     }
 
+    /**
+     * A SEARCH that, if the word is not found, also asks for the closest existing
+     * words in the response's suggestions.
+     */
+    public static Message createSearchRequest(String word, boolean withSuggestions) {
+        Message message = createSearchRequest(word);
+        if (withSuggestions) {
+            message.addParam(SEARCH_WITH_SUGGESTIONS);
+        }
+        return message;
+    }
+
     public static Message createAddRequest(String word, String meaning) {
         Message message = new Message();
         message.setOperation(ADD);
@@ -135,6 +215,142 @@ public class Protocol {
         return message;
     }
 
+    /**
+     * Groups several SEARCH, ADD, ADD_MEANING, REMOVE and UPDATE_MEANING requests
+     * into one message. The response carries one item per request, in order.
+     */
+    public static Message createBatchRequest(List<Message> requests) {
+        Message message = new Message();
+        message.setOperation(BATCH);
+        message.setItems(new ArrayList<>(requests));
+        return message;
+    }
+
+    /**
+     * Asks the server to compress responses larger than the given number of bytes
+     * for the rest of the connection.
+     */
+    public static Message createCompressRequest(int threshold) {
+        Message message = new Message();
+        message.setOperation(COMPRESS);
+        message.addParam(String.valueOf(threshold));
+        return message;
+    }
+
+    /**
+     * Asks for up to limit words starting with the prefix, in sorted order, as the
+     * response results. With meanings, the response also carries one SEARCH item
+     * per word holding its meanings.
+     */
+    public static Message createPrefixRequest(String prefix, int limit, boolean withMeanings) {
+        Message message = new Message();
+        message.setOperation(PREFIX);
+        message.setWord(prefix);
+        message.addParam(String.valueOf(limit));
+        if (withMeanings) {
+            message.addParam(PREFIX_WITH_MEANINGS);
+        }
+        return message;
+    }
+
+    /**
+     * Asks for up to limit existing words closest to the given one by edit
+     * distance, nearest first, as the response results.
+     */
+    public static Message createSuggestRequest(String word, int limit) {
+        Message message = new Message();
+        message.setOperation(SUGGEST);
+        message.setWord(word);
+        message.addParam(String.valueOf(limit));
+        return message;
+    }
+
+    /**
+     * Asks for up to limit words whose meanings contain every term of the query,
+     * best matches first, as the response results.
+     */
+    public static Message createFindRequest(String query, int limit) {
+        Message message = new Message();
+        message.setOperation(FIND);
+        message.setWord(query);
+        message.addParam(String.valueOf(limit));
+        return message;
+    }
+
+    /**
+     * Asks for up to limit words containing the fragment, which must be at least
+     * three characters long, as the response results.
+     */
+    public static Message createContainsRequest(String fragment, int limit) {
+        Message message = new Message();
+        message.setOperation(CONTAINS);
+        message.setWord(fragment);
+        message.addParam(String.valueOf(limit));
+        return message;
+    }
+
+    /**
+     * Asks for up to limit words matching a glob pattern, where '?' stands for any
+     * one character and '*' for any run of characters, in sorted order. When the
+     * server's time budget runs out first the response still succeeds, with the
+     * words found so far and an error message saying they are incomplete.
+     */
+    public static Message createPatternRequest(String pattern, int limit) {
+        Message message = new Message();
+        message.setOperation(PATTERN);
+        message.setWord(pattern);
+        message.addParam(String.valueOf(limit));
+        return message;
+    }
+
+    public static Message createPingRequest() {
+        Message message = new Message();
+        message.setOperation(PING);
+        return message;
+    }
+
+    /**
+     * Asks for the whole dictionary. A successful response carries the snapshot size
+     * in bytes as its only result and is followed on the wire by exactly that many
+     * raw bytes in the dictionary file format, one "word: meaning" line per meaning.
+     */
+    public static Message createExportRequest() {
+        Message message = new Message();
+        message.setOperation(EXPORT);
+        return message;
+    }
+
+    /**
+     * Response telling the client that the server is overloaded and did not run the
+     * request. The request is answered in full so pipelined clients can match it.
+     */
+    public static Message createBusyResponse(Message request, long retryAfterMillis) {
+        Message message = new Message();
+        if (request != null) {
+            message.setOperation(request.getOperation());
+            message.setWord(request.getWord());
+            message.setRequestId(request.getRequestId());
+        }
+        message.setStatus(BUSY);
+        message.setErrorMessage("Server is currently at maximum capacity. Please try again later.");
+        message.setRetryAfterMillis(retryAfterMillis);
+        return message;
+    }
+
+    /**
+     * Notice pushed to every client when the server starts draining. Clients should
+     * finish what they are doing and reconnect after a random delay of up to
+     * reconnectWindowMillis, so they do not all arrive at once.
+     */
+    public static Message createReconnectNotice(long reconnectWindowMillis) {
+        Message message = new Message();
+        message.setOperation(NOTICE);
+        message.setStatus(RECONNECT);
+        message.setErrorMessage("Server is shutting down. Please reconnect.");
+        message.setRetryAfterMillis(reconnectWindowMillis);
+        return message;
+    }
+
     /**
      * Special case: If newMeaning is "<delete>", the meaning will be removed instead of updated.
      */
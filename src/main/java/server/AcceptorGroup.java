@@ -0,0 +1,211 @@
+package server;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Threads accepting connections on the server port. With SO_REUSEPORT every
+ * thread gets its own listening socket and the kernel spreads new connections
+ * over them; otherwise the threads share one socket.
+ *
+ * The accept loop only hands each connection to the callback, so the callback
+ * should leave slow work such as logging to other threads.
+ *
+ * Closing a listener resets the connections still waiting in its accept
+ * queue, so {@link #close()} first accepts everything queued. When another
+ * process shares the port through SO_REUSEPORT, a connection the kernel puts
+ * on this queue between the last accept and the close is still lost; Linux
+ * 5.14 and later can move those to the other listener with the
+ * net.ipv4.tcp_migrate_req sysctl.
+ */
+class AcceptorGroup {
+    private static final Logger LOGGER = Logger.getLogger(AcceptorGroup.class.getName());
+
+    /**
+     * Opens one listening socket.
+     */
+    interface Opener {
+        ServerSocketChannel open() throws IOException;
+    }
+
+    /**
+     * Takes ownership of an accepted connection.
+     */
+    interface Callback {
+        void accepted(SocketChannel channel) throws IOException;
+    }
+
+    // how long close() waits for the accept loops to empty the queues
+    private static final long DRAIN_TIMEOUT_MS = 1000;
+
+    private final List<ServerSocketChannel> listeners = new ArrayList<>();
+    private final Thread[] threads;
+    private final Selector[] selectors; // one per thread, woken by close()
+    private final CountDownLatch stopped; // counts down as each accept loop ends
+    private volatile boolean started;
+    private final Callback callback;
+    private final LongAdder acceptedCount = new LongAdder();
+    private volatile boolean open = true;
+
+    /**
+     * Opens the listening sockets.
+     *
+     * @param opener opens a listener with the configured address and socket options
+     * @param acceptors the number of accepting threads
+     * @param shard true to give every thread its own listener, which needs SO_REUSEPORT
+     */
+    AcceptorGroup(Opener opener, int acceptors, boolean shard, Callback callback) throws IOException {
+        if (acceptors < 1) {
+            throw new IllegalArgumentException("At least one acceptor thread is required");
+        }
+        this.threads = new Thread[acceptors];
+        this.selectors = new Selector[acceptors];
+        this.stopped = new CountDownLatch(acceptors);
+        this.callback = callback;
+
+        try {
+            for (int i = 0; i < (shard ? acceptors : 1); i++) {
+                ServerSocketChannel listener = opener.open();
+                listeners.add(listener);
+                listener.configureBlocking(false);
+            }
+            // a shared listener is registered with every thread's selector
+            for (int i = 0; i < acceptors; i++) {
+                selectors[i] = Selector.open();
+                listeners.get(i % listeners.size()).register(selectors[i], SelectionKey.OP_ACCEPT);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Accepts connections until {@link #close()} is called, on the calling thread
+     * and on acceptors - 1 additional threads.
+     */
+    void run() {
+        started = true;
+        for (int i = 1; i < threads.length; i++) {
+            ServerSocketChannel listener = listeners.get(i % listeners.size());
+            Selector selector = selectors[i];
+            threads[i] = new Thread(() -> acceptLoop(listener, selector), "DictionaryAcceptor-" + (i + 1));
+            threads[i].start();
+        }
+        acceptLoop(listeners.get(0), selectors[0]);
+
+        for (int i = 1; i < threads.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void acceptLoop(ServerSocketChannel listener, Selector selector) {
+        try {
+            while (open) {
+                try {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                } catch (IOException e) {
+                    if (open) {
+                        LOGGER.log(Level.SEVERE, "Error waiting for client connections: " + e.getMessage(), e);
+                    }
+                    return;
+                }
+                acceptQueued(listener);
+            }
+            // closing: take what is still queued before the listener goes
+            acceptQueued(listener);
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    // accepts until the listener's queue is empty; other threads may share it
+    private void acceptQueued(ServerSocketChannel listener) {
+        while (true) {
+            try {
+                SocketChannel channel = listener.accept(); // in blocking mode, whatever the listener's
+                if (channel == null) {
+                    return;
+                }
+                acceptedCount.increment();
+                try {
+                    callback.accepted(channel);
+                } catch (IOException e) {
+                    channel.close();
+                    throw e;
+                }
+            } catch (IOException e) {
+                if (listener.isOpen()) {
+                    LOGGER.log(Level.SEVERE, "Error accepting client connection: " + e.getMessage(), e);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Ends the accept loops, which first accept the connections already queued,
+     * then closes every listening socket.
+     */
+    void close() {
+        open = false;
+        for (Selector selector : selectors) {
+            if (selector != null) {
+                selector.wakeup();
+            }
+        }
+        if (started) {
+            try {
+                if (!stopped.await(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    LOGGER.warning("Accept loops did not stop, closing the listeners anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (Selector selector : selectors) {
+            if (selector != null) {
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Error closing selector: " + e.getMessage(), e);
+                }
+            }
+        }
+        for (ServerSocketChannel listener : listeners) {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Error closing server channel: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    int getListenerCount() {
+        return listeners.size();
+    }
+
+    int getAcceptorCount() {
+        return threads.length;
+    }
+
+    long getAcceptedCount() {
+        return acceptedCount.sum();
+    }
+}
@@ -1,41 +1,150 @@
 package server;
 
+import common.BinaryCodec;
+import common.Compressor;
+import common.JsonCodec;
 import common.Protocol;
 import common.DictionaryResult;
 
-import common.Protocol;
 import java.io.*;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ClientHandler implements Runnable {
-    private Socket clientSocket;
+    private static final int MAX_BATCH_SIZE = 50000;
+    private static final int DEFAULT_PREFIX_LIMIT = 10;
+    private static final int MAX_PREFIX_LIMIT = 1000;
+    private static final int MISS_SUGGESTIONS = 5; // carried by a SEARCH miss that asks for them
+    private static final int MAX_SUGGEST_LIMIT = 50;
+    private static final int DEFAULT_FIND_LIMIT = 20;
+    private static final int MAX_FIND_LIMIT = 1000;
+    private static final int DEFAULT_CONTAINS_LIMIT = 20;
+    private static final int MAX_CONTAINS_LIMIT = 1000;
+    private static final int DEFAULT_PATTERN_LIMIT = 20;
+    private static final int MAX_PATTERN_LIMIT = 1000;
+    // a PATTERN lookup returns what it has found after this long
+    private static final long PATTERN_TIME_BUDGET_MS = 50;
+    // responses held back while the client pipelines, before a flush is forced anyway
+    private static final int MAX_COALESCED_RESPONSES = 64;
+
+    private Socket clientSocket;          // null for Unix domain socket connections
+    private final SocketChannel clientChannel; // the connection's channel, if it has one
+    private final String clientAddress;
     private Dictionary dictionary;
-    private BufferedReader reader;
-    private PrintWriter writer;
+    private final RateLimiter rateLimiter;
+    private final RateLimiter.Client rateLimits; // null when rate limiting is off
+
+    // set by a COMPRESS request, -1 while responses are sent uncompressed
+    private volatile int compressionThreshold = -1;
+    private final Compressor compressor = new Compressor();
+
+    // the shutdown thread pushes notices between responses, so every write to the client holds this
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private OutputStream jsonOutput;        // set once the client speaks JSON lines
+    private DataOutputStream binaryOutput;  // set once the binary handshake is accepted
+    private CountingOutputStream socketOutput; // below the buffering, counts send calls
+
+    // Performance monitoring, updated under writeLock
+    private volatile long responseCount = 0;
+    private volatile long flushCount = 0;
+    private volatile long transferCount = 0; // transferTo calls streaming EXPORT snapshots
 
     public ClientHandler(Socket clientSocket, Dictionary dictionary) {
+        this(clientSocket, dictionary, null);
+    }
+
+    public ClientHandler(Socket clientSocket, Dictionary dictionary, RateLimiter rateLimiter) {
+        this(clientSocket, clientSocket.getChannel(), clientSocket.getInetAddress().getHostAddress(),
+                dictionary, rateLimiter);
+    }
+
+    /**
+     * Serves a connection through its channel only, as for Unix domain sockets,
+     * which have no {@link Socket} view.
+     */
+    public ClientHandler(SocketChannel clientChannel, Dictionary dictionary, RateLimiter rateLimiter) {
+        this(null, clientChannel, addressOf(clientChannel), dictionary, rateLimiter);
+    }
+
+    private ClientHandler(Socket clientSocket, SocketChannel clientChannel, String clientAddress,
+                          Dictionary dictionary, RateLimiter rateLimiter) {
         this.clientSocket = clientSocket;
+        this.clientChannel = clientChannel;
+        this.clientAddress = clientAddress;
         this.dictionary = dictionary;
+        this.rateLimiter = rateLimiter;
+        this.rateLimits = rateLimiter != null
+                ? rateLimiter.newClient(clientAddress) : null;
     }
 
-    @Override
-    public void run() {
+    /**
+     * The peer's IP address, or "local" for a Unix domain socket; clients on the
+     * server's host share one rate limit.
+     */
+    static String addressOf(SocketChannel channel) {
         try {
-            // initialize I/O streams
-            reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            writer = new PrintWriter(new OutputStreamWriter(clientSocket.getOutputStream()), true);
+            SocketAddress remote = channel.getRemoteAddress();
+            if (remote instanceof InetSocketAddress) {
+                return ((InetSocketAddress) remote).getAddress().getHostAddress();
+            }
+        } catch (IOException e) {
+            // closed already, it will fail on first use
+        }
+        return "local";
+    }
+
+    String getClientAddress() {
+        return clientAddress;
+    }
 
-            String requestJson;
-            // listen for requests until client disconnects
-            while ((requestJson = reader.readLine()) != null) {
-                // parse request
-                Protocol.Message request = Protocol.fromJson(requestJson);
-                Protocol.Message response = processRequest(request);
+    private InputStream openInput() throws IOException {
+        return clientSocket != null ? clientSocket.getInputStream() : Channels.newInputStream(clientChannel);
+    }
+
+    private OutputStream openOutput() throws IOException {
+        return clientSocket != null ? clientSocket.getOutputStream() : Channels.newOutputStream(clientChannel);
+    }
+
+    // called under writeLock
+    private OutputStream openCountedOutput() throws IOException {
+        if (socketOutput == null) {
+            socketOutput = new CountingOutputStream(openOutput());
+        }
+        return socketOutput;
+    }
 
-                // send response
-                writer.println(Protocol.toJson(response));
+    // called under writeLock
+    private void flush(OutputStream output) throws IOException {
+        output.flush();
+        flushCount++;
+    }
+
+    @Override
+    public void run() {
+        try {
+            // the first byte tells us whether the client wants the binary codec
+            RequestInput input = new RequestInput(openInput());
+            input.mark(1);
+            int firstByte = input.read();
+            if (firstByte == BinaryCodec.HANDSHAKE) {
+                serveBinary(input);
+            } else if (firstByte != -1) {
+                input.reset();
+                serveJson(input);
             }
+        } catch (SocketTimeoutException e) {
+            // no request or heartbeat within the idle timeout, free the worker
+            System.out.println("Closing idle client: " + clientAddress);
         } catch (IOException e) {
             System.err.println("Error handling client: " + e.getMessage());
         } finally {
@@ -43,11 +152,172 @@ public class ClientHandler implements Runnable {
         }
     }
 
-    private Protocol.Message processRequest(Protocol.Message request) {
+    private void serveJson(InputStream input) throws IOException {
+        // initialize I/O streams
+        OutputStream output;
+        writeLock.lock();
+        try {
+            output = new BufferedOutputStream(openCountedOutput());
+            jsonOutput = output;
+        } finally {
+            writeLock.unlock();
+        }
+        JsonCodec codec = new JsonCodec(input, output, compressor);
+
+        // one request and one response object are reused for the whole connection
+        Protocol.Message request = new Protocol.Message();
         Protocol.Message response = new Protocol.Message();
+
+        // listen for requests until client disconnects
+        int unflushed = 0;
+        while (codec.read(request)) {
+            FileChannel snapshot = null;
+            if (Protocol.EXPORT.equals(request.getOperation())) {
+                snapshot = openExport(request, response);
+            } else {
+                processRequest(request, response);
+            }
+            if (compressionThreshold >= 0) {
+                codec.enableCompression(compressionThreshold);
+            }
+
+            // send response; while the next request is already buffered the client is
+            // pipelining and the response can share a send call with the ones after it
+            writeLock.lock();
+            try {
+                codec.write(response);
+                responseCount++;
+                if (snapshot != null || ++unflushed >= MAX_COALESCED_RESPONSES || !codec.hasBufferedLine()) {
+                    flush(output);
+                    unflushed = 0;
+                }
+                if (snapshot != null) {
+                    transferSnapshot(snapshot, output);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    private void serveBinary(RequestInput input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        DataOutputStream out;
+
+        // accept the handshake
+        writeLock.lock();
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(openCountedOutput()));
+            out.write(BinaryCodec.HANDSHAKE);
+            flush(out);
+            binaryOutput = out;
+        } finally {
+            writeLock.unlock();
+        }
+
+        Protocol.Message request;
+        int unflushed = 0;
+        while ((request = BinaryCodec.read(in, compressor)) != null) {
+            FileChannel snapshot = null;
+            Protocol.Message response;
+            if (Protocol.EXPORT.equals(request.getOperation())) {
+                response = new Protocol.Message();
+                snapshot = openExport(request, response);
+            } else {
+                response = processRequest(request);
+            }
+            writeLock.lock();
+            try {
+                if (compressionThreshold >= 0) {
+                    BinaryCodec.write(response, out, compressor, compressionThreshold);
+                } else {
+                    BinaryCodec.write(response, out);
+                }
+                responseCount++;
+                if (snapshot != null || ++unflushed >= MAX_COALESCED_RESPONSES || !input.hasBufferedFrame()) {
+                    flush(out);
+                    unflushed = 0;
+                }
+                if (snapshot != null) {
+                    transferSnapshot(snapshot, out);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+    }
+
+    Protocol.Message processRequest(Protocol.Message request) {
+        return processRequest(request, new Protocol.Message());
+    }
+
+    // fills the given response, which may be reused from a previous request
+    Protocol.Message processRequest(Protocol.Message request, Protocol.Message response) {
+        startResponse(request, response);
+        if (Protocol.PING.equals(request.getOperation())) {
+            // heartbeats skip rate limiting and never touch the dictionary
+            response.setOperation(Protocol.PONG);
+            response.setStatus(Protocol.SUCCESS);
+            return response;
+        }
+        if (isThrottled(request, response)) {
+            return response;
+        }
+        return execute(request, response);
+    }
+
+    private void startResponse(Protocol.Message request, Protocol.Message response) {
+        response.reset();
         response.setOperation(request.getOperation());
         response.setWord(request.getWord());
+        response.setRequestId(request.getRequestId());
+    }
+
+    /**
+     * Charges the request against this client's read and write budgets. Batches
+     * are charged once, per item, when they arrive.
+     *
+     * @return true if the client is over its limit and the response says so
+     */
+    private boolean isThrottled(Protocol.Message request, Protocol.Message response) {
+        if (rateLimits == null) {
+            return false;
+        }
 
+        int writes = 0;
+        int reads = 0;
+        if (Protocol.BATCH.equals(request.getOperation())) {
+            for (Protocol.Message item : request.getItems()) {
+                if (isWrite(item)) {
+                    writes++;
+                } else {
+                    reads++;
+                }
+            }
+        } else if (isWrite(request)) {
+            writes = 1;
+        } else {
+            reads = 1;
+        }
+
+        long retryAfter = rateLimiter.tryAcquire(rateLimits, reads, writes);
+        if (retryAfter == 0) {
+            return false;
+        }
+        response.setStatus(Protocol.THROTTLED);
+        response.setErrorMessage("Request rate limit exceeded. Please slow down.");
+        response.setRetryAfterMillis(retryAfter);
+        return true;
+    }
+
+    private static boolean isWrite(Protocol.Message request) {
+        String operation = request.getOperation();
+        return Protocol.ADD.equals(operation) || Protocol.REMOVE.equals(operation)
+                || Protocol.ADD_MEANING.equals(operation) || Protocol.UPDATE_MEANING.equals(operation);
+    }
+
+    // runs an admitted request
+    private Protocol.Message execute(Protocol.Message request, Protocol.Message response) {
         try {
             switch (request.getOperation()) {
                 case Protocol.SEARCH:
@@ -65,6 +335,32 @@ public class ClientHandler implements Runnable {
                 case Protocol.UPDATE_MEANING:
                     handleUpdateMeaning(request, response);
                     break;
+                case Protocol.PREFIX:
+                    handlePrefix(request, response);
+                    break;
+                case Protocol.SUGGEST:
+                    handleSuggest(request, response);
+                    break;
+                case Protocol.CONTAINS:
+                    handleContains(request, response);
+                    break;
+                case Protocol.PATTERN:
+                    handlePattern(request, response);
+                    break;
+                case Protocol.FIND:
+                    handleFind(request, response);
+                    break;
+                case Protocol.BATCH:
+                    handleBatch(request, response);
+                    break;
+                case Protocol.EXPORT:
+                    // the transports stream EXPORT themselves
+                    response.setStatus(Protocol.ERROR);
+                    response.setErrorMessage("EXPORT must be sent on its own");
+                    break;
+                case Protocol.COMPRESS:
+                    handleCompress(request, response);
+                    break;
                 default:
                     response.setStatus(Protocol.ERROR);
                     response.setErrorMessage("Unknown operation");
@@ -83,6 +379,25 @@ public class ClientHandler implements Runnable {
     private void handleSearch(Protocol.Message request, Protocol.Message response) throws DictionaryException{
         List<String> meanings = dictionary.getMeanings(request.getWord());
 
+        setSearchResult(response, meanings);
+        addSuggestions(request, response);
+    }
+
+    // a miss tells a client that asks for it the closest words, which saves it guessing at spellings;
+    // with suggestions turned off the miss is answered as it is
+    private void addSuggestions(Protocol.Message request, Protocol.Message response) throws DictionaryException {
+        if (Protocol.MEANING_NOT_FOUND.equals(response.getStatus())
+                && request.getParams().contains(Protocol.SEARCH_WITH_SUGGESTIONS) && dictionary.hasSuggestions()) {
+            response.setSuggestions(dictionary.getSuggestions(request.getWord(), MISS_SUGGESTIONS));
+        }
+    }
+
+    /**
+     * Fills in the answer to a SEARCH for a word with the given meanings, null
+     * or empty if the word is not in the dictionary. Every transport answers
+     * SEARCH through here, so they all say the same.
+     */
+    static void setSearchResult(Protocol.Message response, List<String> meanings) {
         if (meanings == null || meanings.isEmpty()) {
             response.setStatus(Protocol.MEANING_NOT_FOUND);
         } else {
@@ -91,6 +406,101 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    /**
+     * Reads the result limit of a lookup from its first parameter, clamped to
+     * 1..maxLimit.
+     *
+     * @return the limit, or 0 if the parameter is not a number and the response says so
+     */
+    private static int readLimit(Protocol.Message request, Protocol.Message response, int defaultLimit, int maxLimit) {
+        String limitParam = request.getParamAt(0);
+        if (limitParam == null) {
+            return defaultLimit;
+        }
+
+        try {
+            return Math.max(1, Math.min(maxLimit, Integer.parseInt(limitParam.trim())));
+        } catch (NumberFormatException e) {
+            response.setStatus(Protocol.ERROR);
+            response.setErrorMessage("Invalid result limit: " + limitParam);
+            return 0;
+        }
+    }
+
+    private void handleSuggest(Protocol.Message request, Protocol.Message response) throws DictionaryException {
+        int limit = readLimit(request, response, MISS_SUGGESTIONS, MAX_SUGGEST_LIMIT);
+        if (limit == 0) {
+            return;
+        }
+
+        response.setStatus(Protocol.SUCCESS);
+        response.setResults(dictionary.getSuggestions(request.getWord(), limit));
+    }
+
+    private void handlePrefix(Protocol.Message request, Protocol.Message response) throws DictionaryException {
+        int limit = readLimit(request, response, DEFAULT_PREFIX_LIMIT, MAX_PREFIX_LIMIT);
+        if (limit == 0) {
+            return;
+        }
+
+        List<String> words = dictionary.getWordsWithPrefix(request.getWord(), limit);
+        response.setStatus(Protocol.SUCCESS);
+        response.setResults(words);
+
+        if (Protocol.PREFIX_WITH_MEANINGS.equals(request.getParamAt(1))) {
+            List<List<String>> meaningsList = dictionary.getMeanings(words);
+            List<Protocol.Message> items = new ArrayList<>(words.size());
+
+            for (int i = 0; i < words.size(); i++) {
+                Protocol.Message item = new Protocol.Message();
+                item.setOperation(Protocol.SEARCH);
+                item.setWord(words.get(i));
+                List<String> meanings = meaningsList.get(i);
+                // removed since the prefix walk
+                item.setStatus(meanings.isEmpty() ? Protocol.MEANING_NOT_FOUND : Protocol.SUCCESS);
+                item.setResults(meanings);
+                items.add(item);
+            }
+            response.setItems(items);
+        }
+    }
+
+    private void handleContains(Protocol.Message request, Protocol.Message response) throws DictionaryException {
+        int limit = readLimit(request, response, DEFAULT_CONTAINS_LIMIT, MAX_CONTAINS_LIMIT);
+        if (limit == 0) {
+            return;
+        }
+
+        response.setStatus(Protocol.SUCCESS);
+        response.setResults(dictionary.getWordsContaining(request.getWord(), limit));
+    }
+
+    private void handlePattern(Protocol.Message request, Protocol.Message response) throws DictionaryException {
+        int limit = readLimit(request, response, DEFAULT_PATTERN_LIMIT, MAX_PATTERN_LIMIT);
+        if (limit == 0) {
+            return;
+        }
+
+        Dictionary.PatternMatches matches = dictionary.getWordsMatching(request.getWord(), limit,
+                TimeUnit.MILLISECONDS.toNanos(PATTERN_TIME_BUDGET_MS));
+        response.setStatus(Protocol.SUCCESS);
+        response.setResults(matches.getWords());
+        if (!matches.isComplete()) {
+            response.setErrorMessage("Pattern lookup stopped after " + PATTERN_TIME_BUDGET_MS
+                    + " ms, results are incomplete");
+        }
+    }
+
+    private void handleFind(Protocol.Message request, Protocol.Message response) throws DictionaryException {
+        int limit = readLimit(request, response, DEFAULT_FIND_LIMIT, MAX_FIND_LIMIT);
+        if (limit == 0) {
+            return;
+        }
+
+        response.setStatus(Protocol.SUCCESS);
+        response.setResults(dictionary.findByMeaning(request.getWord(), limit));
+    }
+
     private void handleAdd(Protocol.Message request, Protocol.Message response) throws DictionaryException{
         String meaning = request.getMeaning();
 
@@ -157,13 +567,239 @@ public class ClientHandler implements Runnable {
         }
     }
 
+    private void handleBatch(Protocol.Message request, Protocol.Message response) {
+        List<Protocol.Message> items = request.getItems();
+
+        if (items.size() > MAX_BATCH_SIZE) {
+            response.setStatus(Protocol.ERROR);
+            response.setErrorMessage("Batch cannot contain more than " + MAX_BATCH_SIZE + " requests");
+            return;
+        }
+
+        boolean readOnly = true;
+        for (Protocol.Message item : items) {
+            readOnly &= Protocol.SEARCH.equals(item.getOperation());
+        }
+
+        List<Protocol.Message> itemResponses = new ArrayList<>(items.size());
+        if (readOnly) {
+            // lookups take no lock, so a change may land between two of the words
+            List<String> words = new ArrayList<>(items.size());
+            for (Protocol.Message item : items) {
+                words.add(item.getWord());
+            }
+            List<List<String>> meaningsList = dictionary.getMeanings(words);
+
+            for (int i = 0; i < items.size(); i++) {
+                Protocol.Message item = items.get(i);
+                Protocol.Message itemResponse = new Protocol.Message();
+                startResponse(item, itemResponse);
+
+                List<String> meanings = meaningsList.get(i);
+                if (meanings == null) {
+                    itemResponse.setStatus(Protocol.ERROR);
+                    itemResponse.setErrorMessage("Word cannot be empty (Error code: INVALID_INPUT)");
+                } else {
+                    // answered as a single SEARCH would be
+                    setSearchResult(itemResponse, meanings);
+                    try {
+                        addSuggestions(item, itemResponse);
+                    } catch (DictionaryException e) {
+                        // the word was checked above
+                    }
+                }
+                itemResponses.add(itemResponse);
+            }
+        } else {
+            // mixed batches run in order with every other change held off
+            dictionary.runBatch(() -> {
+                for (Protocol.Message item : items) {
+                    Protocol.Message itemResponse = new Protocol.Message();
+                    startResponse(item, itemResponse);
+                    if (isBatchable(item)) {
+                        execute(item, itemResponse);
+                    } else {
+                        // connection state, nested batches and the like have no place in a batch
+                        itemResponse.setStatus(Protocol.ERROR);
+                        itemResponse.setErrorMessage(item.getOperation() + " cannot be part of a batch");
+                    }
+                    itemResponses.add(itemResponse);
+                }
+            });
+        }
+
+        response.setStatus(Protocol.SUCCESS);
+        response.setItems(itemResponses);
+    }
+
+    // the dictionary operations a batch may contain
+    private static boolean isBatchable(Protocol.Message item) {
+        return Protocol.SEARCH.equals(item.getOperation()) || isWrite(item);
+    }
+
+    private void handleCompress(Protocol.Message request, Protocol.Message response) {
+        int threshold = Compressor.DEFAULT_THRESHOLD;
+        String thresholdParam = request.getParamAt(0);
+
+        if (thresholdParam != null) {
+            try {
+                threshold = Integer.parseInt(thresholdParam.trim());
+            } catch (NumberFormatException e) {
+                response.setStatus(Protocol.ERROR);
+                response.setErrorMessage("Invalid compression threshold: " + thresholdParam);
+                return;
+            }
+        }
+
+        compressionThreshold = Math.max(Compressor.MIN_THRESHOLD, threshold);
+        response.setStatus(Protocol.SUCCESS);
+        response.addResult(String.valueOf(compressionThreshold));
+    }
+
+    /**
+     * Opens a dictionary snapshot for an EXPORT request and fills the response header
+     * with its size. The caller sends the header and then exactly that many bytes
+     * from the returned channel.
+     *
+     * @return the open snapshot, or null if it failed and the response carries the error
+     */
+    FileChannel openExport(Protocol.Message request, Protocol.Message response) {
+        startResponse(request, response);
+        if (isThrottled(request, response)) {
+            return null;
+        }
+
+        try {
+            FileChannel snapshot = dictionary.openSnapshot();
+            response.setStatus(Protocol.SUCCESS);
+            response.addResult(String.valueOf(snapshot.size()));
+            return snapshot;
+        } catch (IOException e) {
+            response.setStatus(Protocol.ERROR);
+            response.setErrorMessage("Could not create dictionary snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // stream a snapshot after its header has been flushed; through the socket's channel
+    // the kernel copies straight from the file instead of through a user-space buffer
+    private void transferSnapshot(FileChannel snapshot, OutputStream output) throws IOException {
+        try (snapshot) {
+            WritableByteChannel target = clientChannel != null ? clientChannel : Channels.newChannel(output);
+            long size = snapshot.size();
+            long position = 0;
+            while (position < size) {
+                position += snapshot.transferTo(position, size - position, target);
+                if (target == clientChannel) {
+                    transferCount++; // otherwise counted as writes to the output stream
+                }
+            }
+            flush(output);
+        }
+    }
+
+    // -1 until the client enables compression
+    int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    Compressor getCompressor() {
+        return compressor;
+    }
+
+    // Getters for monitoring
+    long getResponseCount() {
+        return responseCount;
+    }
+
+    long getFlushCount() {
+        return flushCount;
+    }
+
+    /**
+     * The send system calls made for this connection: buffered writes reaching the
+     * socket plus transferTo calls for EXPORT snapshots.
+     */
+    long getSyscallCount() {
+        CountingOutputStream counted = socketOutput;
+        return (counted != null ? counted.getWriteCount() : 0) + transferCount;
+    }
+
+    String getWriteStats() {
+        return "responses " + responseCount + ", flushes " + flushCount + ", send calls " + getSyscallCount();
+    }
+
+    /**
+     * Pushes an unsolicited message, such as a shutdown notice, in between responses.
+     * A client that has not sent anything yet gets it as a JSON line.
+     *
+     * @param timeoutMillis how long to wait for a response that is being written
+     * @return true if the notice was written
+     */
+    boolean sendNotice(Protocol.Message notice, long timeoutMillis) {
+        try {
+            if (!writeLock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return false; // stuck writing to a slow client
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        try {
+            if (binaryOutput != null) {
+                BinaryCodec.write(notice, binaryOutput);
+                flush(binaryOutput);
+            } else {
+                OutputStream output = jsonOutput != null ? jsonOutput : openCountedOutput();
+                output.write(new JsonCodec().encode(notice));
+                flush(output);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Closes the socket from another thread, which ends a blocked read in run().
+     */
+    void forceClose() {
+        try {
+            close();
+        } catch (IOException e) {
+            System.err.println("Error closing client connection: " + e.getMessage());
+        }
+    }
+
+    private void close() throws IOException {
+        if (clientSocket != null) {
+            clientSocket.close();
+        } else {
+            clientChannel.close();
+        }
+    }
+
+    /**
+     * Buffered request input that can tell, without a system call, whether the next
+     * binary frame has already arrived.
+     */
+    private static class RequestInput extends BufferedInputStream {
+        RequestInput(InputStream in) {
+            super(in);
+        }
+
+        synchronized boolean hasBufferedFrame() {
+            return BinaryCodec.hasCompleteFrame(buf, pos, count - pos);
+        }
+    }
+
     private void closeConnection() {
         try {
-            if (reader != null) reader.close();
-            if (writer != null) writer.close();
-            if (clientSocket != null && !clientSocket.isClosed()) clientSocket.close();
+            close();
 
-            System.out.println("Client disconnected: " + clientSocket.getInetAddress().getHostAddress());
+            System.out.println("Client disconnected: " + clientAddress + " (" + getWriteStats() + ")");
         } catch (IOException e) {
             System.err.println("Error closing client connection: " + e.getMessage());
         }
@@ -0,0 +1,227 @@
+package server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only word store packing every entry into a few large buffers instead of
+ * a map node, key string, list and meaning strings per word. An entry is
+ * <pre>
+ *   i32 key length, key bytes, i32 meaning count, per meaning i32 length and bytes
+ * </pre>
+ * in UTF-8, starting at a multiple of four, so its position fits an int even in
+ * arenas of several gigabytes. An open-addressing table of those positions,
+ * with the key hashes beside it, finds an entry by comparing the stored bytes
+ * with the encoded lookup word; no string is made for keys that do not match.
+ *
+ * The buffers are on the heap or, optionally, direct buffers off it. Only the
+ * entries are packed; the dictionary's sorted set and indexes keep every word
+ * as a string of their own.
+ */
+class CompactWordStore {
+    private static final int CHUNK_SIZE = 1 << 24; // 16 MB, entries never span two
+    private static final int ALIGNMENT = 4;
+
+    private final ByteBuffer[] chunks;
+    private final int[] table;  // entry position / ALIGNMENT + 1, 0 for an empty slot
+    private final int[] hashes; // hash of the key in the same slot
+    private final int mask;
+    private final int size;
+    private final long arenaBytes;
+
+    private CompactWordStore(ByteBuffer[] chunks, int[] table, int[] hashes, int size, long arenaBytes) {
+        this.chunks = chunks;
+        this.table = table;
+        this.hashes = hashes;
+        this.mask = table.length - 1;
+        this.size = size;
+        this.arenaBytes = arenaBytes;
+    }
+
+    /**
+     * Packs the given words and meanings.
+     *
+     * @param offHeap whether the arena is made of direct buffers
+     * @throws IllegalArgumentException if an entry is larger than a chunk
+     */
+    static CompactWordStore build(Map<String, List<String>> entries, boolean offHeap) {
+        int capacity = Integer.highestOneBit(Math.max(entries.size(), 1) * 2 - 1) << 1;
+        int[] table = new int[capacity];
+        int[] hashes = new int[capacity];
+
+        List<ByteBuffer> chunks = new ArrayList<>();
+        ByteBuffer chunk = allocate(CHUNK_SIZE, offHeap);
+        long arenaBytes = 0;
+
+        for (Map.Entry<String, List<String>> entry : entries.entrySet()) {
+            byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            List<String> meanings = entry.getValue();
+            byte[][] encoded = new byte[meanings.size()][];
+            int entrySize = 4 + key.length + 4;
+            for (int i = 0; i < encoded.length; i++) {
+                encoded[i] = meanings.get(i).getBytes(StandardCharsets.UTF_8);
+                entrySize += 4 + encoded[i].length;
+            }
+            if (entrySize > CHUNK_SIZE) {
+                throw new IllegalArgumentException("Entry for '" + entry.getKey() + "' is too large");
+            }
+
+            if (chunk.remaining() < entrySize) {
+                chunk.flip();
+                chunks.add(chunk);
+                chunk = allocate(CHUNK_SIZE, offHeap);
+            }
+            int position = chunk.position();
+            chunk.putInt(key.length).put(key).putInt(encoded.length);
+            for (byte[] meaning : encoded) {
+                chunk.putInt(meaning.length).put(meaning);
+            }
+            int padding = -chunk.position() & (ALIGNMENT - 1);
+            chunk.position(chunk.position() + padding);
+            arenaBytes += entrySize + padding;
+
+            long address = (long) chunks.size() * CHUNK_SIZE + position;
+            int hash = hash(key);
+            int slot = hash & (capacity - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            table[slot] = (int) (address / ALIGNMENT) + 1;
+            hashes[slot] = hash;
+        }
+
+        // the last chunk only keeps what it holds
+        chunk.flip();
+        ByteBuffer last = allocate(chunk.limit(), offHeap);
+        last.put(chunk).flip();
+        chunks.add(last);
+
+        return new CompactWordStore(chunks.toArray(new ByteBuffer[0]), table, hashes, entries.size(), arenaBytes);
+    }
+
+    private static ByteBuffer allocate(int capacity, boolean offHeap) {
+        return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * Returns a word's meanings, decoded into new strings, or null if the word
+     * is not stored.
+     */
+    List<String> get(String word) {
+        long address = find(word.getBytes(StandardCharsets.UTF_8));
+        return address < 0 ? null : readMeanings(address);
+    }
+
+    boolean contains(String word) {
+        return find(word.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // arena plus the two tables
+    long byteSize() {
+        return arenaBytes + (long) table.length * 2 * Integer.BYTES;
+    }
+
+    // decodes every entry, for snapshots
+    void forEach(BiConsumer<String, List<String>> action) {
+        for (int slot : table) {
+            if (slot != 0) {
+                long address = (long) (slot - 1) * ALIGNMENT;
+                ByteBuffer chunk = chunks[(int) (address / CHUNK_SIZE)];
+                int position = (int) (address % CHUNK_SIZE);
+                int keyLength = chunk.getInt(position);
+                action.accept(readString(chunk, position + 4, keyLength), readMeanings(address));
+            }
+        }
+    }
+
+    // the entry's position in the arena, or -1
+    private long find(byte[] key) {
+        int hash = hash(key);
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] != hash) {
+                continue;
+            }
+            long address = (long) (table[slot] - 1) * ALIGNMENT;
+            if (keyEquals(chunks[(int) (address / CHUNK_SIZE)], (int) (address % CHUNK_SIZE), key)) {
+                return address;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean keyEquals(ByteBuffer chunk, int position, byte[] key) {
+        if (chunk.getInt(position) != key.length) {
+            return false;
+        }
+        int start = position + 4;
+        if (chunk.hasArray()) {
+            int offset = chunk.arrayOffset() + start;
+            return Arrays.equals(chunk.array(), offset, offset + key.length, key, 0, key.length);
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (chunk.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<String> readMeanings(long address) {
+        ByteBuffer chunk = chunks[(int) (address / CHUNK_SIZE)];
+        int position = (int) (address % CHUNK_SIZE);
+        position += 4 + chunk.getInt(position);
+
+        String[] meanings = new String[chunk.getInt(position)];
+        position += 4;
+        for (int i = 0; i < meanings.length; i++) {
+            int length = chunk.getInt(position);
+            meanings[i] = readString(chunk, position + 4, length);
+            position += 4 + length;
+        }
+        return List.of(meanings);
+    }
+
+    private static String readString(ByteBuffer chunk, int position, int length) {
+        if (chunk.hasArray()) {
+            return new String(chunk.array(), chunk.arrayOffset() + position, length, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[length];
+        chunk.get(position, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int hash(byte[] key) {
+        int hash = Arrays.hashCode(key);
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A rough estimate of what an entry costs in the map the dictionary uses
+     * otherwise, with compressed references and one byte per Latin-1 character:
+     * the map node and table slot, the key string, the entry with its version,
+     * the immutable list and a string per meaning.
+     */
+    static long estimateMapEntryBytes(String word, List<String> meanings) {
+        long bytes = 32 + 8;
+        bytes += 24 + align(16 + word.length());
+        bytes += 24;
+        bytes += meanings.size() <= 2 ? 24 : 16 + align(16 + 4L * meanings.size());
+        for (String meaning : meanings) {
+            bytes += 24 + align(16 + meaning.length());
+        }
+        return bytes;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+}
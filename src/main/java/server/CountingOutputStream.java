@@ -0,0 +1,44 @@
+package server;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the writes that reach a socket's output stream. Every write here is one
+ * send system call, so placed below the buffering it shows how well responses are
+ * being coalesced.
+ *
+ * Callers serialize their writes; the counters may be read from any thread.
+ */
+class CountingOutputStream extends FilterOutputStream {
+    private volatile long writeCount;
+    private volatile long byteCount;
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        writeCount++;
+        byteCount++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        // pass the whole array on, FilterOutputStream would write it byte by byte
+        out.write(b, off, len);
+        writeCount++;
+        byteCount += len;
+    }
+
+    long getWriteCount() {
+        return writeCount;
+    }
+
+    long getByteCount() {
+        return byteCount;
+    }
+}
@@ -1,11 +1,13 @@
 package server;
 
+import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class CustomThreadPool {
+public class CustomThreadPool implements WorkerPool {
     private static final Logger LOGGER = Logger.getLogger(CustomThreadPool.class.getName());
 
     // Core configuration
@@ -13,7 +15,7 @@ public class CustomThreadPool {
     private final int maxPoolSize;
     private final long keepAliveTime;
     private final TimeUnit timeUnit;
-    private final BlockingQueue<Runnable> workQueue; // Work queue
+    private final BlockingQueue<QueuedTask> workQueue; // Work queue
 
     // Thread management
     private final AtomicInteger poolSize = new AtomicInteger(0);
@@ -22,11 +24,22 @@ public class CustomThreadPool {
 
     // Lifecycle management
     private volatile boolean isShutdown = false;
+    private volatile boolean stopNow = false;
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final Object terminationLock = new Object();
 
     // Performance monitoring
     private final AtomicInteger completedTasks = new AtomicInteger(0);
     private final AtomicInteger rejectedTasks = new AtomicInteger(0);
     private final AtomicInteger queuedTasks = new AtomicInteger(0);
+    private final AtomicLong queueLatencyNanos = new AtomicLong(0); // moving average of queue wait
+
+    // Admission control: when queued tasks already wait longer than this the pool
+    // grows, and once at max threads new work is shed before the queue is full
+    private static final long DEFAULT_MAX_QUEUE_LATENCY_MS = 2000;
+    private static final long MIN_RETRY_AFTER_MS = 100;
+    private static final long MAX_RETRY_AFTER_MS = 10000;
+    private volatile long maxQueueLatencyNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_QUEUE_LATENCY_MS);
 
     // Thread performance thresholds
     private static final double HIGH_LOAD_THRESHOLD = 0.8; // 80% of threads active
@@ -90,8 +103,19 @@ public class CustomThreadPool {
             return false;
         }
 
+        // Queued work already waits too long: add a thread if we can, otherwise shed load
+        // now instead of letting the queue fill up
+        if (estimateQueueLatencyNanos() > maxQueueLatencyNanos && !addWorker()) {
+            rejectedTasks.incrementAndGet();
+            LOGGER.warning("Task rejected - queueing latency above "
+                    + TimeUnit.NANOSECONDS.toMillis(maxQueueLatencyNanos) + " ms at max threads");
+            return false;
+        }
+
+        QueuedTask queuedTask = new QueuedTask(task);
+
         // Try to add to the work queue
-        if (workQueue.offer(task)) {
+        if (workQueue.offer(queuedTask)) {
             queuedTasks.incrementAndGet();
 
             // Check if we need more threads based on load
@@ -103,7 +127,7 @@ public class CustomThreadPool {
         if (poolSize.get() < maxPoolSize) {
             if (addWorker()) {
                 // Successfully added a new worker, try to queue again
-                if (workQueue.offer(task)) {
+                if (workQueue.offer(queuedTask)) {
                     queuedTasks.incrementAndGet();
                     return true;
                 }
@@ -116,6 +140,29 @@ public class CustomThreadPool {
         return false;
     }
 
+    /**
+     * Sets the queueing latency above which new work is rejected once the pool
+     * has reached its maximum size.
+     */
+    public void setMaxQueueLatency(long latency, TimeUnit unit) {
+        this.maxQueueLatencyNanos = unit.toNanos(latency);
+    }
+
+    // How long a task queued now is expected to wait: the moving average of recent
+    // waits, or the age of the oldest queued task if that is already longer
+    private long estimateQueueLatencyNanos() {
+        QueuedTask oldest = workQueue.peek();
+        if (oldest == null) {
+            return 0;
+        }
+        return Math.max(queueLatencyNanos.get(), System.nanoTime() - oldest.enqueuedAt);
+    }
+
+    private void recordQueueLatency(long waitedNanos) {
+        // exponentially weighted, each sample counts for 1/8
+        queueLatencyNanos.accumulateAndGet(waitedNanos, (average, sample) -> average + (sample - average) / 8);
+    }
+
     /**
      * Check the current load and adjust thread count if necessary.
      */
@@ -166,10 +213,12 @@ public class CustomThreadPool {
         }
 
         // Create and start a new worker thread
-        Runnable workerTask = new Worker();
-        Thread thread = threadFactory.newThread(workerTask);
+        Worker worker = new Worker();
+        Thread thread = threadFactory.newThread(worker);
 
         if (thread != null) {
+            worker.thread = thread;
+            workers.add(worker);
             poolSize.incrementAndGet();
             thread.start();
             LOGGER.fine("Added new worker thread: " + thread.getName());
@@ -180,95 +229,138 @@ public class CustomThreadPool {
     }
 
     /**
-     * The inner class worker processes jobs from the queue.
+     * The inner class worker processes jobs from the queue. After shutdown it
+     * keeps taking tasks until the queue is empty.
      */
     private class Worker implements Runnable {
+        private Thread thread;
+        private volatile boolean busy = false; // running a task, so not interrupted by shutdown()
+
         @Override
         public void run() {
-            boolean timedWait = false;
+            boolean timedOut = false;
 
             try {
-                while (!isShutdown) {
-                    Runnable task = null;
+                while (!stopNow) {
+                    QueuedTask task = null;
 
                     try {
-                        // If this is not a core thread and we're over the core pool size,
-                        // use timed poll instead of blocking take
-                        if (poolSize.get() > corePoolSize) {
+                        if (isShutdown) {
+                            // finish what is queued, then exit
+                            task = workQueue.poll();
+                            if (task == null) {
+                                break;
+                            }
+                        } else if (poolSize.get() > corePoolSize) {
+                            // If this is not a core thread and we're over the core pool size,
+                            // use timed poll instead of blocking take
                             task = workQueue.poll(keepAliveTime, timeUnit);
-                            timedWait = true;
                         } else {
                             task = workQueue.take(); // Block until a task is available
-                            timedWait = false;
                         }
                     } catch (InterruptedException e) {
-                        // Thread was interrupted, check shutdown status
-                        if (isShutdown) {
-                            break;
-                        }
+                        // woken by shutdown, check the state again
                         continue;
                     }
 
-                    // If timeout with on task, this thread can terminate
-                    // if above the core pool size
-                    if (timedWait && task == null && poolSize.get() > corePoolSize) {
-                        // Try to decrement poolSize, but only if we're still above core size
-                        if (poolSize.decrementAndGet() < corePoolSize) {
-                            // Oops, went below core size, increment it back
-                            poolSize.incrementAndGet();
-                        } else {
+                    // If timeout with no task, this thread can terminate
+                    // if still above the core pool size
+                    if (task == null) {
+                        int size = poolSize.get();
+                        if (size > corePoolSize && poolSize.compareAndSet(size, size - 1)) {
+                            timedOut = true;
                             LOGGER.fine("Worker thread terminating due to timeout");
                             break; // Exit the loop and terminate this thread
                         }
+                        continue;
                     }
 
                     // If have a task, execute it
-                    if (task != null) {
-                        queuedTasks.decrementAndGet();
-                        activeThreads.incrementAndGet();
-
-                        try {
-                            task.run();
-                            completedTasks.incrementAndGet();
-                        } catch (Throwable t) {
-                            LOGGER.log(Level.SEVERE, "Task execution failed", t);
-                        } finally {
-                            activeThreads.decrementAndGet();
-                        }
+                    busy = true;
+                    if (!stopNow) {
+                        Thread.interrupted(); // clear a wake-up from shutdown() that raced with the dequeue
+                    }
+                    queuedTasks.decrementAndGet();
+                    activeThreads.incrementAndGet();
+                    recordQueueLatency(System.nanoTime() - task.enqueuedAt);
+
+                    try {
+                        task.task.run();
+                        completedTasks.incrementAndGet();
+                    } catch (Throwable t) {
+                        LOGGER.log(Level.SEVERE, "Task execution failed", t);
+                    } finally {
+                        activeThreads.decrementAndGet();
+                        busy = false;
                     }
                 }
             } finally {
-                // timeout or shutdown, decrement pool size
-                poolSize.decrementAndGet();
+                // shutdown, decrement pool size unless the timeout path already did
+                if (!timedOut) {
+                    poolSize.decrementAndGet();
+                }
+                synchronized (terminationLock) {
+                    workers.remove(this);
+                    terminationLock.notifyAll();
+                }
                 LOGGER.fine("Worker thread terminated");
             }
         }
     }
 
     /**
-     * Initiates an orderly shutdown of the thread pool.
+     * A task together with the time it entered the queue.
+     */
+    private static class QueuedTask {
+        final Runnable task;
+        final long enqueuedAt = System.nanoTime();
+
+        QueuedTask(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * Initiates an orderly shutdown: no new tasks are accepted, but running and
+     * queued tasks are completed.
      */
     public void shutdown() {
         isShutdown = true;
 
-        // Interrupt all worker threads to wake them up
-        Thread[] threads = new Thread[Thread.activeCount()];
-        Thread.enumerate(threads);
-
-        for (Thread thread : threads) {
-            if (thread != null && thread.getName().startsWith("DictionaryWorker-")) {
-                thread.interrupt();
+        // Wake the idle workers so they notice the shutdown; busy ones are left alone
+        for (Worker worker : workers) {
+            if (!worker.busy) {
+                worker.thread.interrupt();
             }
         }
 
         LOGGER.info("Thread pool shutdown initiated");
     }
 
+    /**
+     * Stops immediately: queued tasks are dropped and every worker is interrupted.
+     */
+    public void shutdownNow() {
+        isShutdown = true;
+        stopNow = true;
+
+        int dropped = 0;
+        while (workQueue.poll() != null) {
+            queuedTasks.decrementAndGet();
+            dropped++;
+        }
+        for (Worker worker : workers) {
+            worker.thread.interrupt();
+        }
+
+        LOGGER.info("Thread pool stopped, " + dropped + " queued tasks dropped");
+    }
+
     /**
      * Blocks until all tasks have completed execution after a shutdown request,
      * or the timeout occurs, or the current thread is interrupted, whichever happens first.
      *
-     * @param timeout the maximum time to wait after no tasks are in the queue
+     * @param timeout the maximum time to wait
      * @param unit the time unit of the timeout argument
      * @return true if this executor terminated and false if the timeout elapsed before termination
      * @throws InterruptedException if interrupted while waiting
@@ -276,14 +368,16 @@ public class CustomThreadPool {
     public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
         long endTime = System.nanoTime() + unit.toNanos(timeout);
 
-        while (System.nanoTime() < endTime) {
-            if (poolSize.get() == 0 && workQueue.isEmpty()) {
-                return true;
+        synchronized (terminationLock) {
+            while (!workers.isEmpty()) {
+                long remaining = endTime - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
             }
-            Thread.sleep(100); // Sleep a bit to avoid busy waiting
         }
-
-        return poolSize.get() == 0 && workQueue.isEmpty();
+        return true;
     }
 
     // Getters for monitoring thread pool state
@@ -306,4 +400,13 @@ public class CustomThreadPool {
     public int getRejectedTaskCount() {
         return rejectedTasks.get();
     }
+
+    public long getQueueLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(queueLatencyNanos.get());
+    }
+
+    public long getRetryAfterMillis() {
+        long estimate = TimeUnit.NANOSECONDS.toMillis(estimateQueueLatencyNanos());
+        return Math.max(MIN_RETRY_AFTER_MS, Math.min(MAX_RETRY_AFTER_MS, estimate));
+    }
 }
\ No newline at end of file
@@ -4,17 +4,102 @@ import common.Protocol;
 import common.DictionaryResult;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The word store. Each word maps to its meanings and the version of its last
+ * change, replaced as a whole, and lookups take no lock at all. Meaning lists
+ * are immutable, so lookups hand out the stored list as it is and a change
+ * stores a new one.
+ *
+ * The words are also kept in sorted order for prefix and pattern lookups, in a
+ * {@link TrigramIndex} for substring search and, by the tokens of their
+ * meanings, in a {@link MeaningIndex}. Unless turned off, they are kept in a
+ * {@link SuggestionIndex} for spelling suggestions too, by far the largest of
+ * the indexes. Each of them is safe to change concurrently on its own.
+ *
+ * With compact storage the loaded words live in a {@link CompactWordStore}
+ * instead, and the map only holds the words changed since, with removed ones
+ * marked. Lookups check the map first and decode a hit from the store. This
+ * only saves the map entries, lists and meaning strings of the loaded words:
+ * the sorted set and the indexes hold every word as a string in either mode
+ * and take most of the memory, so the whole process shrinks by less than a
+ * tenth, see {@link StorageBenchmark}.
+ *
+ * A change locks one of a fixed set of stripes, picked by the word's hash, and
+ * updates the map and the indexes under it. Changes to one word are thus
+ * applied in the same order everywhere, while changes to other words mostly
+ * take other stripes and do not touch the same lock. The map's own bin locks
+ * are only held for a single put. Snapshots and batches lock every stripe,
+ * which holds all changes off.
+ */
 public class Dictionary {
+    // storage modes for the loaded words
+    public static final String STORAGE_MAP = "map";         // a map entry, list and strings per word
+    public static final String STORAGE_COMPACT = "compact"; // packed UTF-8 in large heap buffers
+    public static final String STORAGE_OFF_HEAP = "offheap"; // packed UTF-8 in direct buffers
+
+    // map entry of a word removed from the compact store
+    private static final VersionedMeanings REMOVED = new VersionedMeanings(Collections.emptyList(), -1);
+
     //define dictionary structure
-    private Map<String, List<String>> words;
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ConcurrentHashMap<String, VersionedMeanings> words;
+    private final String storage;
+    // the loaded words in compact storage, null otherwise
+    private volatile CompactWordStore base;
+    private long baseVersion;
+    private volatile String storageStats = "nothing loaded";
+    // every word in words, sorted, so a prefix is a range
+    private final ConcurrentSkipListSet<String> sortedWords = new ConcurrentSkipListSet<>();
+    // null when suggestions are turned off
+    private final SuggestionIndex suggestions;
+    private final MeaningIndex meaningIndex = new MeaningIndex();
+    private final TrigramIndex trigrams = new TrigramIndex();
+    private volatile long meaningIndexBuildNanos;
+    // a power of two well above the number of cores writing at once
+    private static final int LOCK_STRIPES = 64;
+    private final ReentrantLock[] stripes = new ReentrantLock[LOCK_STRIPES];
+
+    // bumped by every successful change
+    private final AtomicLong version = new AtomicLong(0);
+    // the last file written by saveToFile and the version it holds
+    private volatile Path savedFile;
+    private volatile long savedVersion = -1;
 
     public Dictionary() {
-        words = new HashMap<>();
+        this(STORAGE_MAP);
+    }
+
+    public Dictionary(String storage) {
+        this(storage, true);
+    }
+
+    /**
+     * @param suggestions whether to keep the index behind {@link #getSuggestions};
+     *                    it costs more memory per word than the words themselves
+     */
+    public Dictionary(String storage, boolean suggestions) {
+        if (!STORAGE_MAP.equals(storage) && !STORAGE_COMPACT.equals(storage) && !STORAGE_OFF_HEAP.equals(storage)) {
+            throw new IllegalArgumentException("Unknown storage mode: " + storage);
+        }
+        this.storage = storage;
+        this.suggestions = suggestions ? new SuggestionIndex() : null;
+        words = new ConcurrentHashMap<>();
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
     }
 
     // load dic from file
@@ -28,6 +113,7 @@ public class Dictionary {
 
             BufferedReader reader = new BufferedReader(new FileReader(file));
             String line;
+            Map<String, List<String>> loaded = new HashMap<>();
 
             while ((line = reader.readLine()) != null) {
                 String[] parts = line.split(":", 2);
@@ -36,60 +122,446 @@ public class Dictionary {
                     String meaning = parts[1].trim();
 
                     if (!word.isEmpty() && !meaning.isEmpty()) {
-                        List<String> meanings = words.getOrDefault(word, new ArrayList<>());
-                        meanings.add(meaning);
-                        words.put(word, meanings);
+                        loaded.computeIfAbsent(word, key -> new ArrayList<>()).add(meaning);
                     }
                 }
             }
             reader.close();
+
+            // every loaded word carries the load's version
+            long loadedVersion = version.incrementAndGet();
+            long mapBytes = 0;
+            for (Map.Entry<String, List<String>> entry : loaded.entrySet()) {
+                mapBytes += CompactWordStore.estimateMapEntryBytes(entry.getKey(), entry.getValue());
+            }
+            int count = Math.max(loaded.size(), 1);
+
+            if (!STORAGE_MAP.equals(storage) && base == null && words.isEmpty()) {
+                CompactWordStore store = CompactWordStore.build(loaded, STORAGE_OFF_HEAP.equals(storage));
+                baseVersion = loadedVersion;
+                base = store;
+                storageStats = String.format("%d words in %s storage, %d bytes per word (%d as a map),"
+                        + " word entries only, the indexes are not included",
+                        loaded.size(), storage, store.byteSize() / count, mapBytes / count);
+            } else {
+                for (Map.Entry<String, List<String>> entry : loaded.entrySet()) {
+                    words.put(entry.getKey(), new VersionedMeanings(entry.getValue(), loadedVersion));
+                }
+                storageStats = String.format("%d words in map storage, ~%d bytes per word,"
+                        + " word entries only, the indexes are not included",
+                        loaded.size(), mapBytes / count);
+            }
+            sortedWords.addAll(loaded.keySet());
+            if (suggestions != null) {
+                loaded.keySet().parallelStream().forEach(suggestions::add);
+            }
+            trigrams.addAll(loaded.keySet());
+
+            long buildStart = System.nanoTime();
+            loaded.entrySet().parallelStream().forEach(entry ->
+                    meaningIndex.update(entry.getKey(), Collections.emptyList(), entry.getValue()));
+            meaningIndexBuildNanos = System.nanoTime() - buildStart;
         } catch (IOException e) {
             throw new IOException("Error loading dictionary file: " + e.getMessage(), e);
         }
     }
 
-    // save to file
-    public void saveToFile(String filePath) throws IOException {
+    // save to file; the snapshot is written beside the target and renamed over it,
+    // so readers of the previous file (such as an export in progress) are never cut short
+    public synchronized void saveToFile(String filePath) throws IOException {
+        Path target = Paths.get(filePath);
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
         try {
-            // read lock before write in
-            lock.readLock().lock();
+            long snapshotVersion = writeSnapshot(temp);
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            savedFile = target;
+            savedVersion = snapshotVersion;
+        } catch (IOException e) {
+            throw new IOException("Error saving dictionary file: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens a consistent snapshot of the dictionary in the saveToFile format.
+     * The last saved file is shipped as-is when nothing has changed since it was
+     * written; otherwise a temporary snapshot is written and deleted again when
+     * the returned channel is closed.
+     */
+    public FileChannel openSnapshot() throws IOException {
+        Path saved = savedVersion == version.get() ? savedFile : null;
+
+        if (saved != null) {
+            try {
+                return FileChannel.open(saved, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                // removed since it was saved, fall back to a fresh snapshot
+            }
+        }
+
+        Path snapshot = Files.createTempFile("dictionary-export-", ".txt");
+        try {
+            writeSnapshot(snapshot);
+            return FileChannel.open(snapshot, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(snapshot);
+            throw e;
+        }
+    }
+
+    // write every entry with changes held off, returns the version the snapshot reflects
+    private long writeSnapshot(Path file) throws IOException {
+        try {
+            // hold every change off before writing, lookups carry on
+            lockAll();
             //create writer
-            BufferedWriter writer = new BufferedWriter(new FileWriter(filePath));
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file.toFile()));
 
-            for (Map.Entry<String, List<String>> entry : words.entrySet()) {
+            for (Map.Entry<String, VersionedMeanings> entry : words.entrySet()) {
                 String word = entry.getKey();
-                List<String> meanings = entry.getValue();
+                List<String> meanings = entry.getValue().getMeanings();
 
                 for (String meaning : meanings) {
                     writer.write(word + ": " + meaning);
                     writer.newLine();
                 }
             }
+            CompactWordStore store = base;
+            if (store != null) {
+                // loaded words that have not changed since
+                IOException[] failure = new IOException[1];
+                store.forEach((word, meanings) -> {
+                    if (failure[0] != null || words.containsKey(word)) {
+                        return;
+                    }
+                    try {
+                        for (String meaning : meanings) {
+                            writer.write(word + ": " + meaning);
+                            writer.newLine();
+                        }
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
 
             writer.close();
-        } catch (IOException e) {
-            throw new IOException("Error saving dictionary file: " + e.getMessage(), e);
+            return version.get();
         } finally {
-            // unlock read lock
-            lock.readLock().unlock();
+            unlockAll();
         }
     }
 
-    // get word meanings
+    // get word meanings; the list is immutable and empty if the word is not found
     public List<String> getMeanings(String word) throws DictionaryException {
         // check if word is empty or null
         if (word == null || word.trim().isEmpty()) {
             throw new DictionaryException("Word cannot be empty", "INVALID_INPUT");
         }
 
-        try {
-            lock.readLock().lock();
-            String normalizedWord = word.toLowerCase().trim();
-            List<String> meanings = words.get(normalizedWord);
+        String normalizedWord = word.toLowerCase().trim();
+        VersionedMeanings entry = lookup(normalizedWord);
+
+        return entry != null ? entry.getMeanings() : Collections.emptyList(); // return empty list if word not found
+    }
+
+    /**
+     * Returns the version of the last change to a word, which a cache can use
+     * to tell whether its copy is still current. Versions only grow while the
+     * server runs; they start over when the dictionary is loaded again.
+     *
+     * @return the version, or -1 if the word is not in the dictionary
+     */
+    public long getWordVersion(String word) {
+        if (word == null || word.trim().isEmpty()) {
+            return -1;
+        }
+        VersionedMeanings entry = lookup(word.toLowerCase().trim());
+        return entry != null ? entry.getVersion() : -1;
+    }
+
+    /**
+     * Returns a word's meanings together with their version, read atomically.
+     *
+     * @return the entry, or null if the word is not in the dictionary
+     */
+    public VersionedMeanings getVersionedMeanings(String word) throws DictionaryException {
+        if (word == null || word.trim().isEmpty()) {
+            throw new DictionaryException("Word cannot be empty", "INVALID_INPUT");
+        }
+        word = word.toLowerCase().trim();
+
+        return lookup(word);
+    }
+
+    // a word's entry, from the map or else the compact store
+    private VersionedMeanings lookup(String word) {
+        VersionedMeanings entry = words.get(word);
+        return entry != null ? (entry != REMOVED ? entry : null) : lookupBase(word);
+    }
+
+    // the entry a change starts from, given the word's map entry
+    private VersionedMeanings current(String word, VersionedMeanings entry) {
+        return entry != null ? (entry != REMOVED ? entry : null) : lookupBase(word);
+    }
+
+    private VersionedMeanings lookupBase(String word) {
+        CompactWordStore store = base;
+        if (store == null) {
+            return null;
+        }
+        List<String> meanings = store.get(word);
+        return meanings != null ? new VersionedMeanings(meanings, baseVersion) : null;
+    }
+
+    // the map entry of a word that has just been removed
+    private VersionedMeanings removedEntry(String word) {
+        CompactWordStore store = base;
+        return store != null && store.contains(word) ? REMOVED : null;
+    }
+
+    // storage mode and bytes per word at the last load, for the load report
+    public String getStorageStats() {
+        return storageStats;
+    }
+
+    /**
+     * A word's meanings and the version they belong to, as the dictionary stores
+     * them. Immutable, so it can be handed out without copying.
+     */
+    public static class VersionedMeanings {
+        private final List<String> meanings;
+        private final long version;
+
+        VersionedMeanings(List<String> meanings, long version) {
+            this.meanings = List.copyOf(meanings); // no copy if it is immutable already
+            this.version = version;
+        }
+
+        public List<String> getMeanings() {
+            return meanings;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    // get meanings of many words; entries for empty or null words are null
+    public List<List<String>> getMeanings(List<String> words) {
+        List<List<String>> meaningsList = new ArrayList<>(words.size());
+
+        for (String word : words) {
+            if (word == null || word.trim().isEmpty()) {
+                meaningsList.add(null);
+            } else {
+                VersionedMeanings entry = lookup(word.toLowerCase().trim());
+                meaningsList.add(entry != null ? entry.getMeanings() : Collections.emptyList());
+            }
+        }
+        return meaningsList;
+    }
+
+    /**
+     * Returns up to limit words starting with the given prefix, in sorted order.
+     * The walk starts at the first word not below the prefix and stops at the
+     * first that does not match, so it costs the same on any dictionary size.
+     */
+    public List<String> getWordsWithPrefix(String prefix, int limit) throws DictionaryException {
+        if (prefix == null || prefix.trim().isEmpty()) {
+            throw new DictionaryException("Prefix cannot be empty", "INVALID_INPUT");
+        }
+
+        String normalizedPrefix = prefix.toLowerCase().trim();
+        List<String> matches = new ArrayList<>(Math.min(limit, 64));
+
+        for (String word : sortedWords.tailSet(normalizedPrefix)) {
+            if (matches.size() >= limit || !word.startsWith(normalizedPrefix)) {
+                break;
+            }
+            matches.add(word);
+        }
+        return matches;
+    }
+
+    /**
+     * Returns up to limit existing words close to the given one, nearest first,
+     * for "did you mean" answers to a miss: every word one edit away and some
+     * two edits away, see {@link SuggestionIndex}.
+     *
+     * @throws DictionaryException with code UNSUPPORTED if suggestions are turned off
+     */
+    public List<String> getSuggestions(String word, int limit) throws DictionaryException {
+        if (word == null || word.trim().isEmpty()) {
+            throw new DictionaryException("Word cannot be empty", "INVALID_INPUT");
+        }
+        if (suggestions == null) {
+            throw new DictionaryException("Suggestions are turned off on this server", "UNSUPPORTED");
+        }
+
+        return suggestions.suggest(word.toLowerCase().trim(), limit);
+    }
+
+    public boolean hasSuggestions() {
+        return suggestions != null;
+    }
+
+    /**
+     * Finds words matching a glob pattern, where '?' stands for any one character
+     * and '*' for any run of characters. The pattern's automaton is run along the
+     * sorted words; once it fails on a word's first characters, every word
+     * starting with them is skipped in one seek.
+     *
+     * @param timeBudgetNanos how long the walk may take before it stops with what it found
+     */
+    public PatternMatches getWordsMatching(String pattern, int limit, long timeBudgetNanos) throws DictionaryException {
+        if (pattern == null || pattern.trim().isEmpty()) {
+            throw new DictionaryException("Pattern cannot be empty", "INVALID_INPUT");
+        }
+
+        String normalizedPattern = pattern.toLowerCase().trim();
+        if (normalizedPattern.length() > GlobPattern.MAX_LENGTH) {
+            throw new DictionaryException("Pattern cannot be longer than " + GlobPattern.MAX_LENGTH
+                    + " characters", "INVALID_INPUT");
+        }
+        GlobPattern glob = new GlobPattern(normalizedPattern);
+        String prefix = glob.literalPrefix();
+        long deadline = System.nanoTime() + timeBudgetNanos;
+
+        List<String> matches = new ArrayList<>(Math.min(limit, 64));
+        String word = sortedWords.ceiling(prefix);
+        int visited = 0;
+
+        while (word != null && word.startsWith(prefix) && matches.size() < limit) {
+            if (++visited % 256 == 0 && System.nanoTime() - deadline > 0) {
+                return new PatternMatches(matches, false);
+            }
+
+            long states = glob.start();
+            int position = 0;
+            while (position < word.length() && states != 0) {
+                states = glob.step(states, word.charAt(position++));
+            }
+
+            char last = word.charAt(position - 1);
+            if (states == 0 && last != Character.MAX_VALUE) {
+                // no word starting with the characters read can match
+                word = sortedWords.ceiling(word.substring(0, position - 1) + (char) (last + 1));
+                continue;
+            }
+            if (glob.accepts(states)) {
+                matches.add(word);
+            }
+            word = sortedWords.higher(word);
+        }
+        return new PatternMatches(matches, true);
+    }
+
+    /**
+     * The words found by a pattern lookup, and whether the lookup got to the end
+     * of its range or stopped when its time was up.
+     */
+    public static class PatternMatches {
+        private final List<String> words;
+        private final boolean complete;
+
+        PatternMatches(List<String> words, boolean complete) {
+            this.words = words;
+            this.complete = complete;
+        }
+
+        public List<String> getWords() {
+            return words;
+        }
+
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * Returns up to limit words containing the given fragment, which must be at
+     * least three characters long.
+     */
+    public List<String> getWordsContaining(String fragment, int limit) throws DictionaryException {
+        if (fragment == null || fragment.trim().isEmpty()) {
+            throw new DictionaryException("Fragment cannot be empty", "INVALID_INPUT");
+        }
+
+        String normalizedFragment = fragment.toLowerCase().trim();
+        if (normalizedFragment.length() < TrigramIndex.GRAM_LENGTH) {
+            throw new DictionaryException("Fragment must be at least " + TrigramIndex.GRAM_LENGTH
+                    + " characters long", "INVALID_INPUT");
+        }
+        return trigrams.findContaining(normalizedFragment, limit);
+    }
 
-            return new ArrayList<>(words.getOrDefault(word.toLowerCase().trim(), new ArrayList<>())); // return empty list if word not found
+    /**
+     * Returns up to limit words whose meanings contain every token of the query,
+     * best matches first.
+     */
+    public List<String> findByMeaning(String query, int limit) throws DictionaryException {
+        if (query == null || query.trim().isEmpty()) {
+            throw new DictionaryException("Query cannot be empty", "INVALID_INPUT");
+        }
+
+        CompactWordStore store = base;
+        return meaningIndex.find(query, limit, words.size() + (store != null ? store.size() : 0));
+    }
+
+    // size and build time of the meaning index, for the load report
+    public String getMeaningIndexStats() {
+        return String.format("%d tokens, %d postings, ~%.1f MB, built in %d ms",
+                meaningIndex.getTokenCount(), meaningIndex.getPostingCount(),
+                meaningIndex.estimateBytes() / (1024.0 * 1024.0), meaningIndexBuildNanos / 1_000_000);
+    }
+
+    // run a group of operations with every other change held off; lookups
+    // still run and may see the batch half done. The stripe locks taken by each
+    // change inside are reentrant for the batch, which holds them all
+    public void runBatch(Runnable operations) {
+        try {
+            lockAll();
+            operations.run();
         } finally {
-            lock.readLock().unlock();
+            unlockAll();
+        }
+    }
+
+    // the lock ordering changes to a word
+    private ReentrantLock stripeOf(String word) {
+        int hash = word.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    // always in the same order, so two callers cannot deadlock
+    private void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            if (stripes[i].isHeldByCurrentThread()) {
+                stripes[i].unlock();
+            }
+        }
+    }
+
+    // publishes a word's new map entry, null drops it from the map
+    private void store(String word, VersionedMeanings entry) {
+        if (entry != null) {
+            words.put(word, entry);
+        } else {
+            words.remove(word);
         }
     }
 
@@ -103,22 +575,26 @@ public class Dictionary {
         }
 
         word = word.toLowerCase().trim();
-        meaning = meaning.trim();
+        String addedMeaning = meaning.trim();
+        ReentrantLock stripe = stripeOf(word);
 
         try {
-            lock.writeLock().lock();
+            stripe.lock();
 
-            List<String> meanings = words.get(word);
-            if (meanings != null) {
+            if (current(word, words.get(word)) != null) {
                 return DictionaryResult.failure(Protocol.DUPLICATE); // word already exists
             }
 
-            meanings = new ArrayList<>();
-            meanings.add(meaning);
-            words.put(word, meanings);
+            sortedWords.add(word);
+            if (suggestions != null) {
+                suggestions.add(word);
+            }
+            trigrams.add(word);
+            meaningIndex.update(word, Collections.emptyList(), List.of(addedMeaning));
+            store(word, new VersionedMeanings(List.of(addedMeaning), version.incrementAndGet()));
             return DictionaryResult.success();
         } finally {
-            lock.writeLock().unlock();
+            stripe.unlock();
         }
     }
 
@@ -129,18 +605,27 @@ public class Dictionary {
         }
 
         word = word.toLowerCase().trim();
+        ReentrantLock stripe = stripeOf(word);
 
         try {
-            lock.writeLock().lock();
+            stripe.lock();
 
-            if (!words.containsKey(word)) {
+            VersionedMeanings current = current(word, words.get(word));
+            if (current == null) {
                 return DictionaryResult.failure(Protocol.WORD_NOT_FOUND);  // word does not exist
             }
 
-            words.remove(word);
+            sortedWords.remove(word);
+            if (suggestions != null) {
+                suggestions.remove(word);
+            }
+            trigrams.remove(word);
+            meaningIndex.update(word, current.getMeanings(), Collections.emptyList());
+            version.incrementAndGet();
+            store(word, removedEntry(word));
             return DictionaryResult.success();
         } finally {
-            lock.writeLock().unlock();
+            stripe.unlock();
         }
     }
 
@@ -153,24 +638,27 @@ public class Dictionary {
         }
 
         word = word.toLowerCase().trim();
-        meaning = meaning.trim();
+        String addedMeaning = meaning.trim();
+        ReentrantLock stripe = stripeOf(word);
 
         try {
-            lock.writeLock().lock();
+            stripe.lock();
 
-            List<String> meanings = words.get(word);
-            if (meanings == null) {
+            VersionedMeanings current = current(word, words.get(word));
+            if (current == null) {
                 return DictionaryResult.failure(Protocol.WORD_NOT_FOUND); // word does not exist
             }
-
-            if (meanings.contains(meaning)) {
+            if (current.getMeanings().contains(addedMeaning)) {
                 return DictionaryResult.failure(Protocol.MEANING_NOT_FOUND); // meaning already exists
             }
 
-            meanings.add(meaning);
+            List<String> meanings = new ArrayList<>(current.getMeanings());
+            meanings.add(addedMeaning);
+            meaningIndex.update(word, current.getMeanings(), meanings);
+            store(word, new VersionedMeanings(meanings, version.incrementAndGet()));
             return DictionaryResult.success();
         } finally {
-            lock.writeLock().unlock();
+            stripe.unlock();
         }
     }
 
@@ -185,38 +673,48 @@ public class Dictionary {
         }
 
         word = word.toLowerCase().trim();
-        oldMeaning = oldMeaning.trim();
-        newMeaning = newMeaning.trim();
+        String replacedMeaning = oldMeaning.trim();
+        String replacement = newMeaning.trim();
+        ReentrantLock stripe = stripeOf(word);
 
         try {
-            lock.writeLock().lock();
+            stripe.lock();
 
-            List<String> meanings = words.get(word);
-            if (meanings == null) {
+            VersionedMeanings current = current(word, words.get(word));
+            if (current == null) {
                 return DictionaryResult.failure(Protocol.WORD_NOT_FOUND); // word does not exist
             }
-
-            int index = meanings.indexOf(oldMeaning);
+            int index = current.getMeanings().indexOf(replacedMeaning);
             if (index == -1) {
                 return DictionaryResult.failure(Protocol.MEANING_NOT_FOUND); // old meaning does not exist
             }
 
+            List<String> meanings = new ArrayList<>(current.getMeanings());
             // check if is delete operation
-            if ("<delete>".equals(newMeaning)) {
+            if ("<delete>".equals(replacement)) {
                 // delete the old meaning
                 meanings.remove(index);
-
-                // if the meanings list is empty, remove the word from the dictionary
-                if (meanings.isEmpty()) {
-                    words.remove(word);
-                }
             } else {
                 // update the meaning otherwise
-                meanings.set(index, newMeaning);
+                meanings.set(index, replacement);
+            }
+            long changedVersion = version.incrementAndGet();
+
+            // if the meanings list is empty, remove the word from the dictionary
+            meaningIndex.update(word, current.getMeanings(), meanings);
+            if (meanings.isEmpty()) {
+                sortedWords.remove(word);
+                if (suggestions != null) {
+                    suggestions.remove(word);
+                }
+                trigrams.remove(word);
+                store(word, removedEntry(word));
+            } else {
+                store(word, new VersionedMeanings(meanings, changedVersion));
             }
             return DictionaryResult.success();
         } finally {
-            lock.writeLock().unlock();
+            stripe.unlock();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package server;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures Dictionary throughput with 1, 2, 4, ... threads up to the number of
+ * cores, so it shows how well operations on different words run in parallel.
+ * Every thread looks up random words and, for the given share of its operations,
+ * adds a meaning to a random word and deletes it again.
+ *
+ * Usage: java server.DictionaryBenchmark [words] [seconds-per-step] [write-percent]
+ */
+public class DictionaryBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int wordCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int writePercent = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        Dictionary dictionary = new Dictionary();
+        String[] words = new String[wordCount];
+        for (int i = 0; i < wordCount; i++) {
+            words[i] = "word" + i;
+            dictionary.addWord(words[i], "meaning of word " + i);
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.println(wordCount + " words, " + writePercent + "% writes, " + cores + " cores");
+
+        double baseline = 0;
+        for (int threads = 1; ; threads = Math.min(threads * 2, cores)) {
+            double opsPerSecond = run(dictionary, words, threads, seconds, writePercent);
+            if (baseline == 0) {
+                baseline = opsPerSecond;
+            }
+            System.out.printf("%3d threads: %,12.0f ops/s  (x%.2f)%n", threads, opsPerSecond, opsPerSecond / baseline);
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    private static double run(Dictionary dictionary, String[] words, int threadCount,
+                              int seconds, int writePercent) throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        long endTime = System.nanoTime() + seconds * 1_000_000_000L;
+
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            String tempMeaning = "temporary meaning " + t;
+            threads[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    while ((count & 0xFF) != 0 || System.nanoTime() < endTime) {
+                        String word = words[random.nextInt(words.length)];
+                        if (random.nextInt(100) < writePercent) {
+                            dictionary.addMeaning(word, tempMeaning);
+                            dictionary.updateMeaning(word, tempMeaning, "<delete>");
+                        } else {
+                            dictionary.getMeanings(word);
+                        }
+                        count++;
+                    }
+                } catch (DictionaryException e) {
+                    throw new IllegalStateException(e);
+                }
+                operations.add(count);
+            }, "DictionaryBenchmark-" + (t + 1));
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return operations.sum() / (double) seconds;
+    }
+}
@@ -1,12 +1,27 @@
 package server;
 
+import common.Compressor;
+import common.JsonCodec;
+import common.Protocol;
+
 import java.io.*;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.Arrays;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Date;
+import java.util.List;
+import java.util.Set;
 import javax.swing.SwingUtilities;
 import java.util.Locale;
 
@@ -16,17 +31,85 @@ public class DictionaryServer {
     private int port;
     private String dictionaryFile;
     private Dictionary dictionary;
-    private CustomThreadPool threadPool;
+    private WorkerPool threadPool;
     private final int AUTOSAVE_INTERVAL = 30; // seconds
     private AtomicBoolean running;
     private ScheduledExecutorService scheduler;
 
+    // Server modes
+    public static final String MODE_POOL = "pool"; // one pooled worker per connection
+    public static final String MODE_NIO = "nio";   // selector I/O threads, pooled workers per request
+    public static final String MODE_VIRTUAL = "virtual"; // one virtual thread per connection, no cap
+    private String mode = MODE_POOL;
+    private NioServer nioServer;
+    private static final int NIO_IO_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    // Accepting: with SO_REUSEPORT every acceptor thread gets its own listening socket
+    private int acceptorCount = Math.min(2, Runtime.getRuntime().availableProcessors());
+    private AcceptorGroup acceptors;
+    private volatile long acceptRate; // connections accepted in the last second
+    private long lastAcceptedCount;
+    private static final int STATS_INTERVAL = 30; // seconds
+
+    // Optional Unix domain socket listener for clients on this host, null disables
+    private Path unixSocketPath;
+    private AcceptorGroup unixAcceptors;
+
+    // Optional UDP listener for SEARCH lookups, 0 disables
+    private int udpPort = 0;
+    private UdpServer udpServer;
+
+    // Optional HTTP endpoint for cacheable lookups, 0 disables
+    private int httpPort = 0;
+    private HttpLookupServer httpServer;
+
+    // Per-connection events are logged on this thread so a slow console or GUI cannot
+    // hold up accepting; when it falls far behind, the messages are dropped
+    private static final int EVENT_LOG_CAPACITY = 1000;
+    private final ThreadPoolExecutor eventLogger = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(EVENT_LOG_CAPACITY), runnable -> {
+                Thread thread = new Thread(runnable, "DictionaryEventLog");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.DiscardPolicy());
+
     // Thread pool configuration
     private static final int CORE_POOL_SIZE = 4;
     private static final int MAX_POOL_SIZE = 16;
     private static final long KEEP_ALIVE_TIME = 60;
     private static final TimeUnit TIME_UNIT = TimeUnit.SECONDS;
     private static final int WORK_QUEUE_CAPACITY = 100;
+    private long maxQueueLatencyMillis = 2000; // shed load when queued work waits longer than this
+    // connections with no request or heartbeat for this long are closed, 0 disables.
+    // Off by default, as older clients send no heartbeat and sit silent between
+    // lookups; with only current clients, which send one every 5 seconds,
+    // --idle-timeout=20 allows three to go missing
+    private int idleTimeoutMillis = 0;
+
+    // Rate limiting: requests per second per connection and per client IP, 0 disables
+    private double connectionReadRate = RateLimiter.DEFAULT_CONNECTION_READ_RATE;
+    private double connectionWriteRate = RateLimiter.DEFAULT_CONNECTION_WRITE_RATE;
+    private double addressReadRate = RateLimiter.DEFAULT_ADDRESS_READ_RATE;
+    private double addressWriteRate = RateLimiter.DEFAULT_ADDRESS_WRITE_RATE;
+    private RateLimiter rateLimiter;
+    private static final List<String> RATE_OPTIONS =
+            Arrays.asList("--read-rate", "--write-rate", "--ip-read-rate", "--ip-write-rate");
+
+    // Draining: on shutdown clients are told to reconnect and get this long to finish
+    private int drainTimeoutMillis = 10000;
+    private static final long RECONNECT_WINDOW_MS = 1000; // clients spread their reconnects over this
+    private static final long NOTICE_WRITE_TIMEOUT_MS = 100;
+    // Lets a new server process bind the port before this one exits. Both processes need
+    // it, so both are started with --reuse-port for an upgrade. Off by default, so a
+    // second server started on the port by mistake fails instead of taking half the clients
+    private boolean reusePort = false;
+    private final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet(); // thread-per-connection modes
+
+    // Socket options for accepted TCP connections. Responses are flushed as soon as
+    // no further request is waiting, so Nagle's algorithm would only hold them back
+    // for the client's delayed ACK.
+    private boolean tcpNoDelay = true;
+    private int sendBufferSize = 0; // 0 keeps the system default
 
     // GUI components
     private ServerGUI gui;
@@ -38,20 +121,14 @@ public class DictionaryServer {
         this.dictionary = new Dictionary();
         this.running = new AtomicBoolean(true);
 
-        // Create custom thread pool for handling client connections
-        this.threadPool = new CustomThreadPool(
-            CORE_POOL_SIZE,
-            MAX_POOL_SIZE,
-            KEEP_ALIVE_TIME,
-            TIME_UNIT,
-            WORK_QUEUE_CAPACITY
-        );
-
         // Create scheduler for auto-saving
         this.scheduler = Executors.newSingleThreadScheduledExecutor();
     }
 
     public void start() {
+        threadPool = createWorkerPool();
+        rateLimiter = new RateLimiter(connectionReadRate, connectionWriteRate, addressReadRate, addressWriteRate);
+
         try {
             // Initialize GUI
             SwingUtilities.invokeLater(() -> {
@@ -63,6 +140,9 @@ public class DictionaryServer {
             LOGGER.info("Loading dictionary from " + dictionaryFile);
             dictionary.loadFromFile(dictionaryFile);
             LOGGER.info("Dictionary loaded successfully");
+            LOGGER.info("Word storage: " + dictionary.getStorageStats());
+            LOGGER.info("Meaning index: " + dictionary.getMeaningIndexStats());
+            LOGGER.info("Memory after load: " + memoryStats());
             if (gui != null) {
                 gui.addLogMessage("Dictionary loaded successfully from " + dictionaryFile);
             }
@@ -70,59 +150,32 @@ public class DictionaryServer {
             // Set up auto-save
             setupAutoSave();
 
+            // Forget the rate limits of clients that have gone quiet
+            scheduler.scheduleAtFixedRate(rateLimiter::removeIdleAddresses, 1, 1, TimeUnit.MINUTES);
+
+            // Sample the accept rate and log pool stats, instead of doing either per connection
+            scheduler.scheduleAtFixedRate(this::sampleAcceptRate, 1, 1, TimeUnit.SECONDS);
+            scheduler.scheduleAtFixedRate(this::logThreadPoolStats, STATS_INTERVAL, STATS_INTERVAL, TimeUnit.SECONDS);
+
             // Set up shutdown hook
             setupShutdownHook();
 
-            // Create server socket
-            ServerSocket serverSocket = new ServerSocket(port);
-            LOGGER.info("Server started on port " + port);
-            if (gui != null) {
-                gui.addLogMessage("Server started on port " + port);
+            if (udpPort > 0) {
+                udpServer = new UdpServer(udpPort, dictionary, rateLimiter);
+                udpServer.start();
+                logEvent("UDP lookups enabled on port " + udpPort);
             }
-
-            // Accept client connections
-            while (running.get()) {
-                try {
-                    Socket clientSocket = serverSocket.accept();
-                    String clientAddress = clientSocket.getInetAddress().getHostAddress();
-                    LOGGER.info("New client connected: " + clientAddress);
-                    if (gui != null) {
-                        gui.addLogMessage("New client connected: " + clientAddress);
-                    }
-
-                    // Create client handler and submit to our custom thread pool
-                    Runnable clientHandler = new ClientHandler(clientSocket, dictionary);
-                    if (!threadPool.execute(clientHandler)) {
-                        LOGGER.severe("Could not process client " + clientAddress + " - thread pool full");
-                        if (gui != null) {
-                            gui.addLogMessage("ERROR: Rejected client " + clientAddress + " - thread pool full");
-                        }
-
-                        // Send a friendly message to the client before closing
-                        try (PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true)) {
-                            writer.println("Server is currently at maximum capacity. Please try again later.");
-                        }
-
-                        clientSocket.close();
-                    }
-
-                    // Log thread pool stats periodically
-                    if (threadPool.getPoolSize() % 5 == 0) {
-                        logThreadPoolStats();
-                    }
-
-                } catch (IOException e) {
-                    if (running.get()) {
-                        LOGGER.log(Level.SEVERE, "Error accepting client connection: " + e.getMessage(), e);
-                        if (gui != null) {
-                            gui.addLogMessage("ERROR: " + e.getMessage());
-                        }
-                    }
-                }
+            if (httpPort > 0) {
+                httpServer = new HttpLookupServer(httpPort, dictionary, rateLimiter);
+                httpServer.start();
+                logEvent("HTTP lookups enabled on port " + httpPort + " at " + HttpLookupServer.WORDS_PATH + "<word>");
             }
 
-            // Clean up
-            serverSocket.close();
+            if (MODE_NIO.equals(mode)) {
+                nioServer = new NioServer(this, dictionary, threadPool, NIO_IO_THREADS);
+                nioServer.start();
+            }
+            acceptConnections();
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Server error: " + e.getMessage(), e);
             if (gui != null) {
@@ -133,15 +186,199 @@ public class DictionaryServer {
         }
     }
 
+    // Connections run on virtual threads in virtual mode, otherwise on our custom thread pool
+    private WorkerPool createWorkerPool() {
+        if (MODE_VIRTUAL.equals(mode)) {
+            return new VirtualThreadPool();
+        }
+        CustomThreadPool pool = new CustomThreadPool(
+            CORE_POOL_SIZE,
+            MAX_POOL_SIZE,
+            KEEP_ALIVE_TIME,
+            TIME_UNIT,
+            WORK_QUEUE_CAPACITY
+        );
+        pool.setMaxQueueLatency(maxQueueLatencyMillis, TimeUnit.MILLISECONDS);
+        return pool;
+    }
+
+    /**
+     * Runs the acceptor threads until shutdown. In NIO mode accepted connections go
+     * to the selector threads, otherwise see {@link #handleConnection(SocketChannel)}.
+     */
+    private void acceptConnections() throws IOException {
+        // Listeners are opened through channels so accepted sockets can stream
+        // EXPORT snapshots with FileChannel.transferTo
+        AcceptorGroup.Callback handoff = nioServer != null ? nioServer::accept : this::handleConnection;
+        AcceptorGroup.Callback callback = channel -> {
+            configureSocket(channel);
+            handoff.accepted(channel);
+        };
+        if (reusePort && !isReusePortSupported()) {
+            LOGGER.warning("SO_REUSEPORT is not supported on this platform, restarts cannot share the port");
+            reusePort = false;
+        }
+        acceptors = new AcceptorGroup(this::openListener, acceptorCount, reusePort, callback);
+        logEvent("Server started on port " + port + " with " + acceptors.getAcceptorCount()
+                + " acceptor threads on " + acceptors.getListenerCount() + " listening sockets");
+
+        // Same protocol on a Unix domain socket for clients on this host
+        if (unixSocketPath != null) {
+            unixAcceptors = new AcceptorGroup(this::openUnixListener, 1, false, callback);
+            Thread thread = new Thread(unixAcceptors::run, "DictionaryAcceptor-unix");
+            thread.start();
+            logEvent("Listening on Unix domain socket " + unixSocketPath);
+        }
+
+        acceptors.run();
+    }
+
+    /**
+     * Thread-per-connection modes: every accepted socket is handed to a pooled worker,
+     * or to a virtual thread, for the lifetime of the connection. Runs on an acceptor
+     * thread, so everything slow happens on the worker or the event log thread.
+     */
+    private void handleConnection(SocketChannel channel) throws IOException {
+        // Create client handler and submit to our custom thread pool
+        ClientHandler handler;
+        if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+            Socket clientSocket = channel.socket();
+            clientSocket.setSoTimeout(idleTimeoutMillis);
+            handler = new ClientHandler(clientSocket, dictionary, rateLimiter);
+        } else {
+            // Unix domain sockets have no read timeout, so idle local clients are kept
+            handler = new ClientHandler(channel, dictionary, rateLimiter);
+        }
+        String clientAddress = handler.getClientAddress();
+        clients.add(handler);
+        Runnable clientHandler = () -> {
+            logEventAsync("New client connected: " + clientAddress);
+            try {
+                handler.run();
+            } finally {
+                clients.remove(handler);
+            }
+        };
+        if (!threadPool.execute(clientHandler)) {
+            clients.remove(handler);
+            logEventAsync("ERROR: Rejected client " + clientAddress + " - thread pool full");
+
+            // Tell the client to back off before closing, as a protocol message it can parse
+            Protocol.Message busy = Protocol.createBusyResponse(null, threadPool.getRetryAfterMillis());
+            ByteBuffer line = ByteBuffer.wrap(new JsonCodec().encode(busy));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+
+            channel.close();
+        }
+    }
+
+    /**
+     * Opens the Unix domain socket listener, replacing a socket file left behind
+     * by a server that did not shut down cleanly.
+     */
+    ServerSocketChannel openUnixListener() throws IOException {
+        Files.deleteIfExists(unixSocketPath);
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        try {
+            channel.bind(UnixDomainSocketAddress.of(unixSocketPath));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    // applies the socket options to an accepted connection; Unix domain sockets have none of them
+    private void configureSocket(SocketChannel channel) throws IOException {
+        if (!(channel.getRemoteAddress() instanceof InetSocketAddress)) {
+            return;
+        }
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, tcpNoDelay);
+        if (sendBufferSize > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+        }
+    }
+
+    /**
+     * Opens the listening channel, with SO_REUSEPORT when asked so that a freshly
+     * started server can share the port while this one drains.
+     */
+    ServerSocketChannel openListener() throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            channel.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    private static boolean isReusePortSupported() throws IOException {
+        try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+            return probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+        }
+    }
+
+    // Log a server event to the logger and the monitor window
+    void logEvent(String message) {
+        LOGGER.info(message);
+        if (gui != null) {
+            gui.addLogMessage(message);
+        }
+    }
+
+    // Log a per-connection event without blocking the caller
+    void logEventAsync(String message) {
+        eventLogger.execute(() -> logEvent(message));
+    }
+
+    private void sampleAcceptRate() {
+        if (acceptors != null) {
+            long accepted = acceptors.getAcceptedCount();
+            acceptRate = accepted - lastAcceptedCount;
+            lastAcceptedCount = accepted;
+        }
+    }
+
     private void logThreadPoolStats() {
         LOGGER.info(String.format(
-            "Thread pool stats - Size: %d, Active: %d, Queue: %d, Completed: %d, Rejected: %d",
+            "Thread pool stats - Size: %d, Active: %d, Queue: %d, Queue latency: %d ms, Completed: %d, Rejected: %d, Accepts: %d/s",
             threadPool.getPoolSize(),
             threadPool.getActiveCount(),
             threadPool.getQueueSize(),
+            threadPool.getQueueLatencyMillis(),
             threadPool.getCompletedTaskCount(),
-            threadPool.getRejectedTaskCount()
+            threadPool.getRejectedTaskCount(),
+            acceptRate
         ));
+        if (udpServer != null) {
+            LOGGER.info(String.format(
+                "UDP stats - Requests: %d, Sent to TCP: %d",
+                udpServer.getRequestCount(),
+                udpServer.getRedirectCount()
+            ));
+        }
+        if (httpServer != null) {
+            LOGGER.info(String.format(
+                "HTTP stats - Requests: %d, Not modified: %d",
+                httpServer.getRequestCount(),
+                httpServer.getNotModifiedCount()
+            ));
+        }
+        if (Compressor.getCompressedMessageCount() > 0) {
+            LOGGER.info(String.format(
+                "Compression stats - Messages: %d, Ratio: %.2f, Avg time: %d us",
+                Compressor.getCompressedMessageCount(),
+                Compressor.getCompressionRatio(),
+                Compressor.getAverageCompressMicros()
+            ));
+        }
     }
 
     private void setupAutoSave() {
@@ -172,32 +409,71 @@ public class DictionaryServer {
         }));
     }
 
+    /**
+     * Drains the server: stop accepting, tell every client to reconnect, let
+     * in-flight and queued requests finish until the drain deadline, and only then
+     * save, so writes made while draining are not lost.
+     */
     private void shutdown() {
         if (running.getAndSet(false)) {
             try {
-                // Save dictionary before shutting down
-                LOGGER.info("Saving dictionary before shutdown...");
-                if (gui != null) {
-                    gui.addLogMessage("Saving dictionary before shutdown...");
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+                logEvent("Draining connections for up to " + drainTimeoutMillis / 1000 + " seconds...");
+
+                // Stop accepting, after taking the connections already queued on our
+                // listeners; with SO_REUSEPORT new connections now go to the other server
+                if (acceptors != null) {
+                    acceptors.close();
                 }
-                dictionary.saveToFile(dictionaryFile);
-                LOGGER.info("Dictionary saved successfully");
-                if (gui != null) {
-                    gui.addLogMessage("Dictionary saved successfully");
+                if (unixAcceptors != null) {
+                    unixAcceptors.close();
+                    Files.deleteIfExists(unixSocketPath);
+                }
+                if (udpServer != null) {
+                    udpServer.stop();
+                }
+                if (httpServer != null) {
+                    httpServer.stop();
                 }
 
-                // Shutdown thread pool and scheduler
-                scheduler.shutdown();
+                // Ask connected clients to reconnect
+                Protocol.Message notice = Protocol.createReconnectNotice(RECONNECT_WINDOW_MS);
+                if (nioServer != null) {
+                    nioServer.drain(notice);
+                } else {
+                    for (ClientHandler client : clients) {
+                        client.sendNotice(notice, NOTICE_WRITE_TIMEOUT_MS);
+                    }
+                }
+
+                // Finish in-flight and queued requests, waiting for clients to leave
+                boolean drained = true;
+                if (nioServer != null) {
+                    drained = nioServer.awaitConnectionsClosed(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+                }
                 threadPool.shutdown();
+                drained &= threadPool.awaitTermination(remainingMillis(deadline), TimeUnit.MILLISECONDS);
 
-                // Wait for all tasks to complete
-                if (!threadPool.awaitTermination(5, TimeUnit.SECONDS)) {
-                    LOGGER.info("Forcing thread pool shutdown...");
-                    if (gui != null) {
-                        gui.addLogMessage("Forcing thread pool shutdown...");
+                if (!drained) {
+                    logEvent("Drain timed out, closing remaining connections...");
+                    for (ClientHandler client : clients) {
+                        client.forceClose();
                     }
+                    threadPool.shutdownNow();
+                }
+                if (nioServer != null) {
+                    nioServer.stop();
+                }
+                if (!threadPool.awaitTermination(1, TimeUnit.SECONDS)) {
+                    logEvent("Some requests did not finish before shutdown");
                 }
 
+                // Save dictionary once no more requests can change it
+                logEvent("Saving dictionary before shutdown...");
+                dictionary.saveToFile(dictionaryFile);
+                logEvent("Dictionary saved successfully");
+
+                scheduler.shutdown();
                 if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
                     LOGGER.info("Forcing scheduler shutdown...");
                     scheduler.shutdownNow();
@@ -223,14 +499,40 @@ public class DictionaryServer {
         }
     }
 
+    /**
+     * The heap in use after a full collection and the direct buffer memory, so
+     * storage modes can be compared by what the process really holds, indexes
+     * included. Asks for a collection, so it is only called once at startup.
+     */
+    private static String memoryStats() {
+        System.gc();
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long direct = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                direct = pool.getMemoryUsed();
+            }
+        }
+        return String.format("%.1f MB heap, %.1f MB direct buffers", heap / (1024.0 * 1024.0), direct / (1024.0 * 1024.0));
+    }
+
+    private static long remainingMillis(long deadline) {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+    }
+
     public static void main(String[] args) {
         // Set default locale to English
         Locale.setDefault(Locale.ENGLISH);
         // Configure basic logging
         configureLogging();
 
-        if (args.length != 2) {
-            System.out.println("Usage: java -jar DictionaryServer.jar <port> <dictionary-file>");
+        if (args.length < 2) {
+            System.out.println("Usage: java -jar DictionaryServer.jar <port> <dictionary-file> [--mode=pool|nio|virtual] [--max-queue-ms=<ms>] [--idle-timeout=<s>]"
+                    + " [--read-rate=<n>] [--write-rate=<n>] [--ip-read-rate=<n>] [--ip-write-rate=<n>]"
+                    + " [--drain-timeout=<s>] [--reuse-port] [--acceptors=<n>]"
+                    + " [--no-tcp-nodelay] [--send-buffer=<bytes>]"
+                    + " [--udp-port=<port>] [--http-port=<port>] [--unix-socket=<path>]"
+                    + " [--storage=map|compact|offheap] [--no-suggestions]");
             return;
         }
 
@@ -243,9 +545,195 @@ public class DictionaryServer {
         }
 
         String dictionaryFile = args[1];
+        String mode = MODE_POOL;
+        long maxQueueMillis = -1;
+        int idleTimeoutSeconds = -1;
+        int drainTimeoutSeconds = -1;
+        int acceptorCount = -1;
+        int udpPort = 0;
+        int httpPort = 0;
+        String unixSocket = null;
+        String storage = Dictionary.STORAGE_MAP;
+        boolean suggestions = true;
+        boolean reusePort = false;
+        boolean tcpNoDelay = true;
+        int sendBufferSize = 0;
+        // per second rates, in the order of RATE_OPTIONS and setRateLimits
+        double[] rates = {
+            RateLimiter.DEFAULT_CONNECTION_READ_RATE, RateLimiter.DEFAULT_CONNECTION_WRITE_RATE,
+            RateLimiter.DEFAULT_ADDRESS_READ_RATE, RateLimiter.DEFAULT_ADDRESS_WRITE_RATE
+        };
+
+        // Optional settings
+        for (int i = 2; i < args.length; i++) {
+            if ("--reuse-port".equals(args[i])) {
+                reusePort = true;
+                continue;
+            }
+            // the default, still accepted from start scripts written when it was not
+            if ("--no-reuse-port".equals(args[i])) {
+                continue;
+            }
+            if ("--no-tcp-nodelay".equals(args[i])) {
+                tcpNoDelay = false;
+                continue;
+            }
+            // the suggestion index takes more memory than the words, so large dictionaries may do without
+            if ("--no-suggestions".equals(args[i])) {
+                suggestions = false;
+                continue;
+            }
+            String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                LOGGER.severe("Invalid option: " + args[i]);
+                return;
+            }
+            switch (option[0]) {
+                case "--mode":
+                    if (!MODE_POOL.equals(option[1]) && !MODE_NIO.equals(option[1])
+                            && !MODE_VIRTUAL.equals(option[1])) {
+                        LOGGER.severe("Unknown server mode: " + option[1]);
+                        return;
+                    }
+                    mode = option[1];
+                    break;
+                case "--max-queue-ms":
+                    try {
+                        maxQueueMillis = Long.parseLong(option[1]);
+                    } catch (NumberFormatException e) {
+                        maxQueueMillis = -1;
+                    }
+                    if (maxQueueMillis <= 0) {
+                        LOGGER.severe("Invalid queue latency: " + option[1]);
+                        return;
+                    }
+                    break;
+                case "--idle-timeout":
+                    try {
+                        idleTimeoutSeconds = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        idleTimeoutSeconds = -1;
+                    }
+                    if (idleTimeoutSeconds < 0 || idleTimeoutSeconds > Integer.MAX_VALUE / 1000) {
+                        LOGGER.severe("Invalid idle timeout: " + option[1]);
+                        return;
+                    }
+                    break;
+                case "--drain-timeout":
+                    try {
+                        drainTimeoutSeconds = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        drainTimeoutSeconds = -1;
+                    }
+                    if (drainTimeoutSeconds < 0 || drainTimeoutSeconds > Integer.MAX_VALUE / 1000) {
+                        LOGGER.severe("Invalid drain timeout: " + option[1]);
+                        return;
+                    }
+                    break;
+                case "--acceptors":
+                    try {
+                        acceptorCount = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        acceptorCount = -1;
+                    }
+                    if (acceptorCount < 1) {
+                        LOGGER.severe("Invalid acceptor count: " + option[1]);
+                        return;
+                    }
+                    break;
+                case "--send-buffer":
+                    try {
+                        sendBufferSize = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        sendBufferSize = -1;
+                    }
+                    if (sendBufferSize < 1) {
+                        LOGGER.severe("Invalid send buffer size: " + option[1]);
+                        return;
+                    }
+                    break;
+                case "--udp-port":
+                    try {
+                        udpPort = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        udpPort = -1;
+                    }
+                    if (udpPort < 1 || udpPort > 65535) {
+                        LOGGER.severe("Invalid UDP port: " + option[1]);
+                        return;
+                    }
+                    break;
+                case "--http-port":
+                    try {
+                        httpPort = Integer.parseInt(option[1]);
+                    } catch (NumberFormatException e) {
+                        httpPort = -1;
+                    }
+                    if (httpPort < 1 || httpPort > 65535) {
+                        LOGGER.severe("Invalid HTTP port: " + option[1]);
+                        return;
+                    }
+                    break;
+                case "--unix-socket":
+                    if (option[1].isEmpty()) {
+                        LOGGER.severe("Invalid Unix socket path: " + option[1]);
+                        return;
+                    }
+                    unixSocket = option[1];
+                    break;
+                case "--storage":
+                    if (!Dictionary.STORAGE_MAP.equals(option[1]) && !Dictionary.STORAGE_COMPACT.equals(option[1])
+                            && !Dictionary.STORAGE_OFF_HEAP.equals(option[1])) {
+                        LOGGER.severe("Unknown storage mode: " + option[1]);
+                        return;
+                    }
+                    storage = option[1];
+                    break;
+                case "--read-rate":
+                case "--write-rate":
+                case "--ip-read-rate":
+                case "--ip-write-rate":
+                    int index = RATE_OPTIONS.indexOf(option[0]);
+                    try {
+                        rates[index] = Double.parseDouble(option[1]);
+                    } catch (NumberFormatException e) {
+                        rates[index] = -1;
+                    }
+                    if (!(rates[index] >= 0)) {
+                        LOGGER.severe("Invalid rate for " + option[0] + ": " + option[1]);
+                        return;
+                    }
+                    break;
+                default:
+                    LOGGER.severe("Unknown option: " + option[0]);
+                    return;
+            }
+        }
 
         // Create and start server
         DictionaryServer server = new DictionaryServer(port, dictionaryFile);
+        server.setMode(mode);
+        server.setStorage(storage, suggestions);
+        if (maxQueueMillis > 0) {
+            server.setMaxQueueLatencyMillis(maxQueueMillis);
+        }
+        server.setRateLimits(rates[0], rates[1], rates[2], rates[3]);
+        if (idleTimeoutSeconds >= 0) {
+            server.setIdleTimeoutMillis(idleTimeoutSeconds * 1000);
+        }
+        if (drainTimeoutSeconds >= 0) {
+            server.setDrainTimeoutMillis(drainTimeoutSeconds * 1000);
+        }
+        server.setReusePort(reusePort);
+        server.setSocketOptions(tcpNoDelay, sendBufferSize);
+        if (acceptorCount > 0) {
+            server.setAcceptorCount(acceptorCount);
+        }
+        server.setUdpPort(udpPort);
+        server.setHttpPort(httpPort);
+        if (unixSocket != null) {
+            server.setUnixSocketPath(Paths.get(unixSocket));
+        }
         server.start();
     }
 
@@ -266,7 +754,7 @@ public class DictionaryServer {
         return dictionaryFile;
     }
 
-    public CustomThreadPool getThreadPool() {
+    public WorkerPool getThreadPool() {
         return threadPool;
     }
 
@@ -274,5 +762,97 @@ public class DictionaryServer {
         return lastSaveTime;
     }
 
+    public String getMode() {
+        return mode;
+    }
+
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    // How the dictionary keeps its loaded words, one of the Dictionary.STORAGE_ modes, and whether it
+    // keeps the suggestion index behind SUGGEST and SEARCH suggestions; must be called before start()
+    public void setStorage(String storage, boolean suggestions) {
+        this.dictionary = new Dictionary(storage, suggestions);
+    }
+
+    // Per second request budgets, 0 disables one; must be called before start()
+    public void setRateLimits(double connectionReadRate, double connectionWriteRate,
+                              double addressReadRate, double addressWriteRate) {
+        this.connectionReadRate = connectionReadRate;
+        this.connectionWriteRate = connectionWriteRate;
+        this.addressReadRate = addressReadRate;
+        this.addressWriteRate = addressWriteRate;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    // 0 keeps idle connections open; must be called before start()
+    public void setIdleTimeoutMillis(int idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public int getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    // how long shutdown waits for clients and queued requests before closing them
+    public void setDrainTimeoutMillis(int drainTimeoutMillis) {
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    // whether listeners set SO_REUSEPORT, so a restarted server can bind the port
+    // while this one drains; off by default, must be called before start()
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    // TCP_NODELAY and SO_SNDBUF for accepted connections, 0 keeps the default
+    // buffer size; must be called before start()
+    public void setSocketOptions(boolean tcpNoDelay, int sendBufferSize) {
+        this.tcpNoDelay = tcpNoDelay;
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    // must be called before start()
+    public void setAcceptorCount(int acceptorCount) {
+        this.acceptorCount = acceptorCount;
+    }
+
+    // 0 disables UDP lookups; must be called before start()
+    public void setUdpPort(int udpPort) {
+        this.udpPort = udpPort;
+    }
+
+    // 0 disables HTTP lookups; must be called before start()
+    public void setHttpPort(int httpPort) {
+        this.httpPort = httpPort;
+    }
+
+    // null disables the Unix domain socket listener; must be called before start()
+    public void setUnixSocketPath(Path unixSocketPath) {
+        this.unixSocketPath = unixSocketPath;
+    }
+
+    // connections accepted during the last second
+    public long getAcceptRate() {
+        return acceptRate;
+    }
+
+    // must be called before start()
+    public void setMaxQueueLatencyMillis(long maxQueueLatencyMillis) {
+        this.maxQueueLatencyMillis = maxQueueLatencyMillis;
+    }
+
+    // In NIO mode connections do not hold a worker, so count them separately
+    public int getClientCount() {
+        if (nioServer != null) {
+            return nioServer.getConnectionCount();
+        }
+        return threadPool.getActiveCount();
+    }
+
 
 }
\ No newline at end of file
@@ -0,0 +1,87 @@
+package server;
+
+/**
+ * A glob pattern, where '?' matches any one character and '*' any run of
+ * characters, compiled to a small automaton. State i means the first i
+ * pattern characters have been matched; the set of live states is a bit mask,
+ * so a step costs a few instructions per live state.
+ *
+ * A key index can run the automaton a character at a time and, once no state
+ * is left, skip every key sharing the prefix read so far.
+ */
+class GlobPattern {
+    // the states, one more than the pattern length, must fit in a long
+    static final int MAX_LENGTH = Long.SIZE - 1;
+
+    private final String pattern;
+    private final long starMask; // states at a '*'
+    private final long acceptMask;
+    private final long startStates;
+
+    GlobPattern(String pattern) {
+        if (pattern.length() > MAX_LENGTH) {
+            throw new IllegalArgumentException("Pattern is longer than " + MAX_LENGTH + " characters");
+        }
+        this.pattern = pattern;
+
+        long stars = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '*') {
+                stars |= 1L << i;
+            }
+        }
+        this.starMask = stars;
+        this.acceptMask = 1L << pattern.length();
+        this.startStates = closure(1L);
+    }
+
+    // the characters every match starts with
+    String literalPrefix() {
+        int end = 0;
+        while (end < pattern.length() && pattern.charAt(end) != '*' && pattern.charAt(end) != '?') {
+            end++;
+        }
+        return pattern.substring(0, end);
+    }
+
+    long start() {
+        return startStates;
+    }
+
+    // the states after reading c; 0 once nothing can match any more
+    long step(long states, char c) {
+        long next = 0;
+        long remaining = states & ~acceptMask;
+        while (remaining != 0) {
+            int state = Long.numberOfTrailingZeros(remaining);
+            remaining &= remaining - 1;
+
+            if ((starMask & (1L << state)) != 0) {
+                next |= 1L << state; // the star takes the character
+            } else {
+                char expected = pattern.charAt(state);
+                if (expected == '?' || expected == c) {
+                    next |= 1L << (state + 1);
+                }
+            }
+        }
+        return closure(next);
+    }
+
+    boolean accepts(long states) {
+        return (states & acceptMask) != 0;
+    }
+
+    // a star may also match nothing, so its state implies the next one
+    private long closure(long states) {
+        long stars = states & starMask;
+        while (stars != 0) {
+            int state = Long.numberOfTrailingZeros(stars);
+            stars &= stars - 1;
+            long next = 1L << (state + 1);
+            states |= next;
+            stars |= next & starMask; // a run of stars
+        }
+        return states;
+    }
+}
@@ -0,0 +1,191 @@
+package server;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import common.JsonCodec;
+import common.Protocol;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Optional read-only HTTP endpoint, so standard HTTP caches and proxies can sit in
+ * front of lookup traffic. {@code GET /words/<word>} answers with the same JSON a
+ * SEARCH request gets over TCP.
+ *
+ * Every answer carries an ETag made of the word's version, and "no-cache" so caches
+ * revalidate with If-None-Match; an unchanged word then costs a 304 without a body.
+ * Connections are kept alive between requests. Changes to the dictionary still go
+ * through the TCP protocol only.
+ */
+public class HttpLookupServer {
+    private static final Logger LOGGER = Logger.getLogger(HttpLookupServer.class.getName());
+
+    public static final String WORDS_PATH = "/words/";
+    private static final int HANDLER_THREADS = 4;
+    private static final int STOP_DELAY_SECONDS = 1; // lets exchanges in progress finish
+
+    // responses are encoded on the handler threads, each with its own buffer
+    private static final ThreadLocal<JsonCodec> ENCODERS = ThreadLocal.withInitial(JsonCodec::new);
+
+    private final int port;
+    private final Dictionary dictionary;
+    private final RateLimiter rateLimiter;
+    // part of every ETag, so tags handed out before a restart, when versions start
+    // over, never match
+    private final String instanceTag = Long.toString(System.currentTimeMillis(), 36);
+
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    // Performance monitoring
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder notModifiedCount = new LongAdder();
+
+    /**
+     * @param rateLimiter charges lookups to the client's address budget, may be null
+     */
+    public HttpLookupServer(int port, Dictionary dictionary, RateLimiter rateLimiter) {
+        this.port = port;
+        this.dictionary = dictionary;
+        this.rateLimiter = rateLimiter;
+    }
+
+    public void start() throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(port), 0);
+        httpServer.createContext(WORDS_PATH, this::handle);
+
+        executor = Executors.newFixedThreadPool(HANDLER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "DictionaryHTTP");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.start();
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(STOP_DELAY_SECONDS);
+            executor.shutdown();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requestCount.increment();
+            Headers headers = exchange.getResponseHeaders();
+            String method = exchange.getRequestMethod();
+            if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                headers.set("Allow", "GET, HEAD");
+                sendEmpty(exchange, 405);
+                return;
+            }
+
+            if (rateLimiter != null) {
+                String address = exchange.getRemoteAddress().getAddress().getHostAddress();
+                long retryAfter = rateLimiter.tryAcquire(address, 1, 0);
+                if (retryAfter > 0) {
+                    headers.set("Retry-After", Long.toString(TimeUnit.MILLISECONDS.toSeconds(retryAfter + 999)));
+                    sendEmpty(exchange, 429);
+                    return;
+                }
+            }
+
+            // the URI path is already percent-decoded
+            String word = exchange.getRequestURI().getPath().substring(WORDS_PATH.length());
+            Protocol.Message response = new Protocol.Message();
+            response.setOperation(Protocol.SEARCH);
+            response.setWord(word);
+            headers.set("Cache-Control", "no-cache");
+
+            // revalidation: compare versions before copying any meanings
+            long version = dictionary.getWordVersion(word);
+            if (version >= 0 && matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag(version))) {
+                notModifiedCount.increment();
+                headers.set("ETag", etag(version));
+                sendEmpty(exchange, 304);
+                return;
+            }
+
+            int status;
+            try {
+                Dictionary.VersionedMeanings entry = dictionary.getVersionedMeanings(word);
+                ClientHandler.setSearchResult(response, entry != null ? entry.getMeanings() : null);
+                if (entry == null) {
+                    status = 404;
+                } else {
+                    status = 200;
+                    headers.set("ETag", etag(entry.getVersion()));
+                }
+            } catch (DictionaryException e) {
+                status = 400;
+                response.setStatus(Protocol.ERROR);
+                response.setErrorMessage(e.getMessage() + " (Error code: " + e.getErrorCode() + ")");
+            }
+            sendJson(exchange, status, ENCODERS.get().encode(response));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "HTTP request failed: " + e.getMessage(), e);
+            throw e;
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private String etag(long version) {
+        return "\"" + instanceTag + "-" + Long.toString(version, 36) + "\"";
+    }
+
+    // If-None-Match holds "*" or a comma separated list of tags, possibly weak
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("*") || candidate.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            // a HEAD answer announces the length but has no body
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(body.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        // a known length keeps the connection alive for the next request
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+    }
+
+    // Getters for monitoring
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getNotModifiedCount() {
+        return notModifiedCount.sum();
+    }
+}
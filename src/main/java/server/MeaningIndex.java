@@ -0,0 +1,187 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Inverted index from the tokens in meanings to the words whose meanings
+ * contain them. Each posting holds how often the token occurs in the word's
+ * meanings, which ranks the words matching a query.
+ *
+ * A token's postings are only changed inside a compute on that token, so
+ * changes to different words can run concurrently with each other and with
+ * queries.
+ */
+class MeaningIndex {
+    // shorter tokens match almost every meaning and are not indexed
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    // highest score first, ties in word order
+    private static final Comparator<Match> RANKING =
+            Comparator.comparingDouble((Match match) -> -match.score).thenComparing(match -> match.word);
+
+    // token to the words containing it and how often
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Moves a word's postings from its old meanings to its new ones. Either may
+     * be empty, for a word that is being added or removed.
+     */
+    void update(String word, List<String> oldMeanings, List<String> newMeanings) {
+        Map<String, Integer> oldCounts = countTokens(oldMeanings);
+        Map<String, Integer> newCounts = countTokens(newMeanings);
+
+        for (String token : oldCounts.keySet()) {
+            if (!newCounts.containsKey(token)) {
+                postings.computeIfPresent(token, (key, words) -> {
+                    words.remove(word);
+                    return words.isEmpty() ? null : words;
+                });
+            }
+        }
+        for (Map.Entry<String, Integer> entry : newCounts.entrySet()) {
+            if (!entry.getValue().equals(oldCounts.get(entry.getKey()))) {
+                postings.compute(entry.getKey(), (key, words) -> {
+                    if (words == null) {
+                        words = new ConcurrentHashMap<>(2);
+                    }
+                    words.put(word, entry.getValue());
+                    return words;
+                });
+            }
+        }
+    }
+
+    /**
+     * Returns up to limit words whose meanings contain every token of the query,
+     * best first. A word scores the occurrences of each token, weighted so that
+     * rare tokens count for more than common ones.
+     *
+     * @param wordCount the number of words in the dictionary, for the weights
+     */
+    List<String> find(String query, int limit, int wordCount) {
+        Set<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Map<String, Integer>> lists = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            Map<String, Integer> words = postings.get(token);
+            if (words == null) {
+                return Collections.emptyList(); // no word has every token
+            }
+            lists.add(words);
+        }
+        // walk the shortest list and probe the others
+        lists.sort(Comparator.comparingInt(Map::size));
+
+        double[] weights = new double[lists.size()];
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = Math.log(1.0 + (double) Math.max(wordCount, 1) / Math.max(lists.get(i).size(), 1));
+        }
+
+        // the worst of the best matches so far is on top
+        PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, RANKING.reversed());
+        candidates:
+        for (Map.Entry<String, Integer> posting : lists.get(0).entrySet()) {
+            double score = posting.getValue() * weights[0];
+            for (int i = 1; i < lists.size(); i++) {
+                Integer count = lists.get(i).get(posting.getKey());
+                if (count == null) {
+                    continue candidates;
+                }
+                score += count * weights[i];
+            }
+
+            best.add(new Match(posting.getKey(), score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+
+        List<Match> ranked = new ArrayList<>(best);
+        ranked.sort(RANKING);
+        List<String> words = new ArrayList<>(ranked.size());
+        for (Match match : ranked) {
+            words.add(match.word);
+        }
+        return words;
+    }
+
+    int getTokenCount() {
+        return postings.size();
+    }
+
+    long getPostingCount() {
+        long count = 0;
+        for (Map<String, Integer> words : postings.values()) {
+            count += words.size();
+        }
+        return count;
+    }
+
+    /**
+     * A rough estimate of the heap the index takes: per token its map entry,
+     * string and postings map, per posting its map entry and table slot.
+     * Counts are small enough to be cached Integers.
+     */
+    long estimateBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, ConcurrentHashMap<String, Integer>> entry : postings.entrySet()) {
+            bytes += 32 + 40 + entry.getKey().length() + 64;
+            bytes += entry.getValue().size() * (32L + 8);
+        }
+        return bytes;
+    }
+
+    private static Map<String, Integer> countTokens(List<String> meanings) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String meaning : meanings) {
+            forEachToken(meaning, token -> counts.merge(token, 1, Integer::sum));
+        }
+        return counts;
+    }
+
+    // the distinct tokens of a query, in order
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        forEachToken(text, tokens::add);
+        return tokens;
+    }
+
+    // lower-cased runs of letters and digits
+    private static void forEachToken(String text, Consumer<String> consumer) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean inToken = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                if (i - start >= MIN_TOKEN_LENGTH) {
+                    consumer.accept(text.substring(start, i).toLowerCase());
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private static class Match {
+        final String word;
+        final double score;
+
+        Match(String word, double score) {
+            this.word = word;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package server;
+
+import common.BinaryCodec;
+import common.JsonCodec;
+import common.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking server mode. A few I/O threads multiplex every client connection
+ * with selectors and read newline-framed requests into per-connection buffers.
+ * Only complete requests are handed to the worker pool, so idle connections do
+ * not hold a worker thread.
+ */
+public class NioServer {
+    private static final Logger LOGGER = Logger.getLogger(NioServer.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_REQUEST_SIZE = 1024 * 1024; // bytes per request line
+    private static final long IDLE_SWEEP_INTERVAL_MS = 1000;
+    private static final int MAX_GATHERED_WRITES = 64; // responses handed to one write call
+
+    // responses are encoded on worker threads, each with its own reusable buffer
+    private static final ThreadLocal<JsonCodec> ENCODERS = ThreadLocal.withInitial(JsonCodec::new);
+
+    private final DictionaryServer server;
+    private final Dictionary dictionary;
+    private final WorkerPool workerPool;
+    private final IoLoop[] ioLoops;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicInteger connectionCount = new AtomicInteger(0);
+    private final AtomicInteger nextLoop = new AtomicInteger(0);
+
+    /**
+     * Creates a new NioServer.
+     *
+     * @param server the owning server, used for event logging
+     * @param dictionary the dictionary requests are executed against
+     * @param workerPool the pool that processes complete requests
+     * @param ioThreads the number of selector threads
+     */
+    public NioServer(DictionaryServer server, Dictionary dictionary,
+                     WorkerPool workerPool, int ioThreads) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("At least one I/O thread is required");
+        }
+
+        this.server = server;
+        this.dictionary = dictionary;
+        this.workerPool = workerPool;
+        this.ioLoops = new IoLoop[ioThreads];
+    }
+
+    /**
+     * Starts the I/O threads. Connections arrive through {@link #accept(SocketChannel)}.
+     */
+    public void start() throws IOException {
+        running.set(true);
+
+        for (int i = 0; i < ioLoops.length; i++) {
+            ioLoops[i] = new IoLoop(Selector.open());
+            Thread thread = new Thread(ioLoops[i], "DictionaryIO-" + (i + 1));
+            thread.start();
+        }
+
+        server.logEvent("NIO server started with " + ioLoops.length + " I/O threads");
+    }
+
+    /**
+     * Takes an accepted connection and hands it to an I/O thread, round-robin.
+     * Called on the acceptor threads.
+     */
+    void accept(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+
+        String clientAddress = ClientHandler.addressOf(channel);
+        server.logEventAsync("New client connected: " + clientAddress);
+
+        IoLoop loop = ioLoops[Math.floorMod(nextLoop.getAndIncrement(), ioLoops.length)];
+        loop.register(channel);
+    }
+
+    /**
+     * Queues a notice on every open connection, after the responses already queued.
+     */
+    public void drain(Protocol.Message notice) {
+        for (IoLoop loop : ioLoops) {
+            if (loop != null) {
+                loop.execute(() -> {
+                    for (SelectionKey key : loop.selector.keys()) {
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).send(notice);
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Waits for every client to disconnect.
+     *
+     * @return false if connections were still open when the timeout elapsed
+     */
+    public boolean awaitConnectionsClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        long endTime = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (connectionCount) {
+            while (connectionCount.get() > 0) {
+                long remaining = endTime - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(connectionCount, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Closes every open client connection and stops the I/O threads.
+     */
+    public void stop() {
+        if (!running.getAndSet(false)) {
+            return;
+        }
+
+        for (IoLoop loop : ioLoops) {
+            if (loop != null) {
+                loop.selector.wakeup();
+            }
+        }
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * One selector thread. Registration and interest changes requested from other
+     * threads are queued and applied by the loop itself.
+     */
+    private class IoLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+        IoLoop(Selector selector) {
+            this.selector = selector;
+        }
+
+        void register(SocketChannel channel) {
+            execute(() -> {
+                try {
+                    Connection connection = new Connection(this, channel);
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connectionCount.incrementAndGet();
+                } catch (ClosedChannelException e) {
+                    LOGGER.fine("Channel closed before registration");
+                }
+            });
+        }
+
+        void execute(Runnable task) {
+            pendingTasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(server.getIdleTimeoutMillis());
+            long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(IDLE_SWEEP_INTERVAL_MS);
+            try {
+                while (running.get()) {
+                    selector.select(IDLE_SWEEP_INTERVAL_MS);
+
+                    Runnable task;
+                    while ((task = pendingTasks.poll()) != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            LOGGER.log(Level.WARNING, "I/O task failed: " + e.getMessage(), e);
+                        }
+                    }
+
+                    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                    while (keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+
+                        Connection connection = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isReadable()) {
+                                connection.onReadable();
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                connection.onWritable();
+                            }
+                        } catch (IOException e) {
+                            connection.close();
+                        } catch (RuntimeException | Error e) {
+                            // one bad connection must not take the loop and its other connections down
+                            LOGGER.log(Level.WARNING, "Closing " + connection.clientAddress + " after an unexpected failure: " + e, e);
+                            connection.close();
+                        }
+                    }
+
+                    long now = System.nanoTime();
+                    if (idleTimeoutNanos > 0 && now - nextSweep >= 0) {
+                        closeIdleConnections(now - idleTimeoutNanos);
+                        nextSweep = now + TimeUnit.MILLISECONDS.toNanos(IDLE_SWEEP_INTERVAL_MS);
+                    }
+                }
+            } catch (IOException | ClosedSelectorException e) {
+                LOGGER.log(Level.SEVERE, "I/O loop failed: " + e.getMessage(), e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) {
+                        ((Connection) key.attachment()).close();
+                    }
+                }
+                try {
+                    selector.close();
+                } catch (IOException e) {
+                    LOGGER.fine("Error closing selector: " + e.getMessage());
+                }
+            }
+        }
+
+        // close connections that have sent nothing, not even a heartbeat, since the cutoff
+        private void closeIdleConnections(long cutoff) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    Connection connection = (Connection) key.attachment();
+                    if (connection.isIdleSince(cutoff)) {
+                        server.logEvent("Closing idle client: " + connection.clientAddress);
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Per-connection state: a read buffer, the partial request line, complete
+     * requests waiting for a worker and encoded responses waiting to be written.
+     * Requests without a request id are processed in order; requests that carry
+     * one are dispatched independently and may complete out of order.
+     */
+    private class Connection {
+        private final IoLoop loop;
+        private final SocketChannel channel;
+        private final ClientHandler handler;
+        private final String clientAddress;
+        private SelectionKey key;
+
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final JsonCodec decoder = new JsonCodec();
+        private byte[] partialLine = new byte[512];
+        private int partialLength = 0;
+        private final Queue<Protocol.Message> requests = new ConcurrentLinkedQueue<>();
+        private final Queue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+
+        // true while a worker owns this connection's request queue
+        private final AtomicBoolean processing = new AtomicBoolean(false);
+        // true while OP_WRITE is set or about to be, so queued responses share one wakeup
+        private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private boolean handshakeChecked = false;
+        private long lastReadTime = System.nanoTime(); // only touched by the I/O thread
+        private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_WRITES];
+
+        // Performance monitoring, written by the I/O thread
+        private volatile long responseCount = 0;
+        private volatile long flushCount = 0;   // rounds of writes after OP_WRITE
+        private volatile long syscallCount = 0; // write and transferTo calls
+
+        Connection(IoLoop loop, SocketChannel channel) {
+            this.loop = loop;
+            this.channel = channel;
+            this.handler = new ClientHandler(channel, dictionary, server.getRateLimiter());
+            this.clientAddress = handler.getClientAddress();
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(readBuffer);
+            if (read == -1) {
+                close();
+                return;
+            }
+            lastReadTime = System.nanoTime();
+
+            readBuffer.flip();
+
+            // this mode only speaks JSON lines, so decline a binary codec handshake
+            if (!handshakeChecked && readBuffer.hasRemaining()) {
+                handshakeChecked = true;
+                if ((readBuffer.get(readBuffer.position()) & 0xFF) == BinaryCodec.HANDSHAKE) {
+                    readBuffer.get();
+                    enqueue(new PendingWrite(ByteBuffer.wrap(new byte[] {(byte) BinaryCodec.HANDSHAKE_DECLINED}), null));
+                }
+            }
+
+            boolean orderedRequest = false;
+            while (readBuffer.hasRemaining()) {
+                byte b = readBuffer.get();
+                if (b == '\n') {
+                    orderedRequest |= dispatch(partialLine, partialLength);
+                    partialLength = 0;
+                } else {
+                    if (partialLength == partialLine.length) {
+                        partialLine = Arrays.copyOf(partialLine, partialLine.length * 2);
+                    }
+                    partialLine[partialLength++] = b;
+                }
+            }
+            readBuffer.clear();
+
+            if (partialLength > MAX_REQUEST_SIZE) {
+                LOGGER.warning("Request from " + clientAddress + " exceeds " + MAX_REQUEST_SIZE + " bytes");
+                close();
+                return;
+            }
+
+            if (orderedRequest) {
+                scheduleProcessing();
+            }
+        }
+
+        /**
+         * Parses one request line. Pipelined requests with an id go straight to the pool.
+         *
+         * @return true if the request was queued for in-order processing
+         */
+        private boolean dispatch(byte[] line, int length) {
+            Protocol.Message request;
+            try {
+                request = decoder.decode(line, 0, length);
+                if (request == null) {
+                    return false; // blank line
+                }
+            } catch (IOException e) {
+                Protocol.Message response = new Protocol.Message();
+                response.setStatus(Protocol.ERROR);
+                response.setErrorMessage("Malformed request: " + e.getMessage());
+                send(response);
+                return false;
+            }
+
+            if (request.getRequestId() == null) {
+                requests.add(request);
+                return true;
+            }
+
+            if (!workerPool.execute(() -> respond(request))) {
+                send(createBusyResponse(request));
+            }
+            return false;
+        }
+
+        // nothing read since the cutoff and no response still being written
+        boolean isIdleSince(long cutoff) {
+            return lastReadTime - cutoff < 0 && writeQueue.isEmpty() && requests.isEmpty() && !processing.get();
+        }
+
+        void onWritable() throws IOException {
+            flushCount++;
+            while (true) {
+                if (!writeQueued()) {
+                    return; // socket buffer full, wait for the next OP_WRITE
+                }
+
+                key.interestOps(SelectionKey.OP_READ);
+                writeScheduled.set(false);
+                // a response queued after the last poll found the flag still set
+                if (writeQueue.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+
+        /**
+         * Writes out the queue. Responses that are plain buffers, as they are while the
+         * client pipelines, go out together in one gathering write.
+         *
+         * @return true once the queue is empty
+         */
+        private boolean writeQueued() throws IOException {
+            PendingWrite write;
+            while ((write = writeQueue.peek()) != null) {
+                if (write.file != null) {
+                    syscallCount += write.writeTo(channel);
+                    if (!write.isDone()) {
+                        return false;
+                    }
+                    writeQueue.poll();
+                    write.release();
+                    responseCount++;
+                    continue;
+                }
+
+                // gather the buffers up to the next snapshot; the queue is only polled
+                // by this thread, so they stay at its head
+                int count = 0;
+                for (PendingWrite next : writeQueue) {
+                    if (next.file != null || count == gathered.length) {
+                        break;
+                    }
+                    gathered[count++] = next.buffer;
+                }
+                channel.write(gathered, 0, count);
+                syscallCount++;
+                boolean complete = !gathered[count - 1].hasRemaining();
+                Arrays.fill(gathered, 0, count, null);
+
+                while ((write = writeQueue.peek()) != null && write.file == null && !write.buffer.hasRemaining()) {
+                    writeQueue.poll();
+                    responseCount++;
+                }
+                if (!complete) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Hands the queued requests to a worker unless one is already draining them.
+         * Requests on one connection are processed in order.
+         */
+        private void scheduleProcessing() {
+            if (!processing.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (!workerPool.execute(this::processRequests)) {
+                Protocol.Message request;
+                while ((request = requests.poll()) != null) {
+                    send(createBusyResponse(request));
+                }
+                processing.set(false);
+            }
+        }
+
+        private void processRequests() {
+            do {
+                Protocol.Message request;
+                while ((request = requests.poll()) != null) {
+                    respond(request);
+                }
+                processing.set(false);
+                // a request may have arrived after the last poll but before the flag was cleared
+            } while (!requests.isEmpty() && processing.compareAndSet(false, true));
+        }
+
+        private Protocol.Message createBusyResponse(Protocol.Message request) {
+            return Protocol.createBusyResponse(request, workerPool.getRetryAfterMillis());
+        }
+
+        // runs on a worker thread
+        private void respond(Protocol.Message request) {
+            if (Protocol.EXPORT.equals(request.getOperation())) {
+                Protocol.Message response = new Protocol.Message();
+                FileChannel snapshot = handler.openExport(request, response);
+                send(response, snapshot);
+            } else {
+                send(handler.processRequest(request));
+            }
+        }
+
+        private void send(Protocol.Message response) {
+            send(response, null);
+        }
+
+        // the header and the snapshot that follows it are queued as one write so
+        // pipelined responses cannot end up between them
+        private void send(Protocol.Message response, FileChannel snapshot) {
+            byte[] line = ENCODERS.get().encode(response);
+            int threshold = handler.getCompressionThreshold();
+            if (threshold >= 0 && line.length > threshold) {
+                line = JsonCodec.compressLine(line, line.length, handler.getCompressor());
+            }
+            enqueue(new PendingWrite(ByteBuffer.wrap(line), snapshot));
+        }
+
+        private void enqueue(PendingWrite write) {
+            writeQueue.add(write);
+            if (closed.get()) {
+                releaseWrites(); // raced with close(), do not leak an open snapshot
+                return;
+            }
+            if (!writeScheduled.compareAndSet(false, true)) {
+                return; // the I/O thread has not written the earlier responses yet
+            }
+            loop.execute(() -> {
+                if (key.isValid()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            });
+        }
+
+        private void releaseWrites() {
+            PendingWrite write;
+            while ((write = writeQueue.poll()) != null) {
+                write.release();
+            }
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.fine("Error closing client channel: " + e.getMessage());
+            }
+            releaseWrites();
+            if (connectionCount.decrementAndGet() == 0) {
+                synchronized (connectionCount) {
+                    connectionCount.notifyAll();
+                }
+            }
+            server.logEventAsync("Client disconnected: " + clientAddress + " (responses " + responseCount
+                    + ", flushes " + flushCount + ", send calls " + syscallCount + ")");
+        }
+    }
+
+    /**
+     * One queued response: an encoded message, optionally followed by a file region
+     * that is sent with FileChannel.transferTo straight from the page cache.
+     */
+    private static class PendingWrite {
+        private final ByteBuffer buffer;
+        private final FileChannel file;
+        private long filePosition = 0;
+
+        PendingWrite(ByteBuffer buffer, FileChannel file) {
+            this.buffer = buffer;
+            this.file = file;
+        }
+
+        // writes as much as the socket takes, returns the number of system calls made
+        int writeTo(SocketChannel channel) throws IOException {
+            int calls = 0;
+            if (buffer.hasRemaining()) {
+                channel.write(buffer);
+                calls++;
+                if (buffer.hasRemaining()) {
+                    return calls;
+                }
+            }
+            if (file != null) {
+                long size = file.size();
+                while (filePosition < size) {
+                    long sent = file.transferTo(filePosition, size - filePosition, channel);
+                    calls++;
+                    if (sent == 0) {
+                        return calls;
+                    }
+                    filePosition += sent;
+                }
+            }
+            return calls;
+        }
+
+        boolean isDone() throws IOException {
+            return !buffer.hasRemaining() && (file == null || filePosition >= file.size());
+        }
+
+        void release() {
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException e) {
+                    LOGGER.fine("Error closing snapshot: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket rate limiting of client requests, with separate budgets for reads
+ * and writes, per connection and per source IP address.
+ *
+ * Each bucket holds up to one second worth of tokens. A request is admitted when
+ * every bucket it draws from has at least one token left; a large batch may then
+ * take the bucket into debt, which later requests pay back. A rate of 0 disables
+ * that bucket.
+ */
+public class RateLimiter {
+    // default budgets in requests per second
+    public static final double DEFAULT_CONNECTION_READ_RATE = 2000;
+    public static final double DEFAULT_CONNECTION_WRITE_RATE = 200;
+    public static final double DEFAULT_ADDRESS_READ_RATE = 5000;
+    public static final double DEFAULT_ADDRESS_WRITE_RATE = 400;
+
+    // address buckets untouched this long and full again can be dropped
+    private static final long IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final double connectionReadRate;
+    private final double connectionWriteRate;
+    private final double addressReadRate;
+    private final double addressWriteRate;
+    private final ConcurrentHashMap<String, AddressBuckets> addresses = new ConcurrentHashMap<>();
+
+    // Performance monitoring
+    private final LongAdder throttledReads = new LongAdder();
+    private final LongAdder throttledWrites = new LongAdder();
+
+    public RateLimiter() {
+        this(DEFAULT_CONNECTION_READ_RATE, DEFAULT_CONNECTION_WRITE_RATE,
+                DEFAULT_ADDRESS_READ_RATE, DEFAULT_ADDRESS_WRITE_RATE);
+    }
+
+    /**
+     * @param connectionReadRate reads per second allowed on one connection
+     * @param connectionWriteRate writes per second allowed on one connection
+     * @param addressReadRate reads per second allowed across all connections from one IP address
+     * @param addressWriteRate writes per second allowed across all connections from one IP address
+     */
+    public RateLimiter(double connectionReadRate, double connectionWriteRate,
+                       double addressReadRate, double addressWriteRate) {
+        if (connectionReadRate < 0 || connectionWriteRate < 0 || addressReadRate < 0 || addressWriteRate < 0) {
+            throw new IllegalArgumentException("Rates cannot be negative");
+        }
+        this.connectionReadRate = connectionReadRate;
+        this.connectionWriteRate = connectionWriteRate;
+        this.addressReadRate = addressReadRate;
+        this.addressWriteRate = addressWriteRate;
+    }
+
+    /**
+     * Creates the buckets for one client connection.
+     */
+    public Client newClient(String address) {
+        return new Client(address);
+    }
+
+    /**
+     * Takes tokens for one request from every bucket that applies.
+     *
+     * @param reads the number of read operations in the request
+     * @param writes the number of write operations in the request
+     * @return 0 if the request is admitted, otherwise the milliseconds until it would be
+     */
+    public long tryAcquire(Client client, int reads, int writes) {
+        long now = System.nanoTime();
+        AddressBuckets address = addresses.computeIfAbsent(client.address, key -> new AddressBuckets());
+
+        long waitNanos = take(now, reads, client.readBucket, address.readBucket);
+        if (waitNanos > 0) {
+            throttledReads.increment();
+            return toRetryMillis(waitNanos);
+        }
+
+        waitNanos = take(now, writes, client.writeBucket, address.writeBucket);
+        if (waitNanos > 0) {
+            // give back the reads so a rejected request costs nothing
+            refund(reads, client.readBucket, address.readBucket);
+            throttledWrites.increment();
+            return toRetryMillis(waitNanos);
+        }
+        return 0;
+    }
+
+    /**
+     * Takes tokens for one request that has no connection, such as a datagram,
+     * from the budgets of its source address only.
+     *
+     * @return 0 if the request is admitted, otherwise the milliseconds until it would be
+     */
+    public long tryAcquire(String address, int reads, int writes) {
+        long now = System.nanoTime();
+        AddressBuckets buckets = addresses.computeIfAbsent(address, key -> new AddressBuckets());
+
+        long waitNanos = take(now, reads, null, buckets.readBucket);
+        if (waitNanos > 0) {
+            throttledReads.increment();
+            return toRetryMillis(waitNanos);
+        }
+
+        waitNanos = take(now, writes, null, buckets.writeBucket);
+        if (waitNanos > 0) {
+            refund(reads, null, buckets.readBucket);
+            throttledWrites.increment();
+            return toRetryMillis(waitNanos);
+        }
+        return 0;
+    }
+
+    // takes from the connection bucket and then the address bucket, all or nothing
+    private long take(long now, int cost, TokenBucket connectionBucket, TokenBucket addressBucket) {
+        if (cost == 0) {
+            return 0;
+        }
+        long waitNanos = connectionBucket != null ? connectionBucket.tryTake(cost, now) : 0;
+        if (waitNanos > 0) {
+            return waitNanos;
+        }
+        waitNanos = addressBucket != null ? addressBucket.tryTake(cost, now) : 0;
+        if (waitNanos > 0 && connectionBucket != null) {
+            connectionBucket.refund(cost);
+        }
+        return waitNanos;
+    }
+
+    private void refund(int cost, TokenBucket connectionBucket, TokenBucket addressBucket) {
+        if (cost == 0) {
+            return;
+        }
+        if (connectionBucket != null) {
+            connectionBucket.refund(cost);
+        }
+        if (addressBucket != null) {
+            addressBucket.refund(cost);
+        }
+    }
+
+    private static long toRetryMillis(long waitNanos) {
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    /**
+     * Drops the buckets of addresses that have been idle long enough to be full again.
+     */
+    public void removeIdleAddresses() {
+        long now = System.nanoTime();
+        addresses.values().removeIf(buckets -> buckets.isIdle(now));
+    }
+
+    // Getters for monitoring
+    public long getThrottledReadCount() {
+        return throttledReads.sum();
+    }
+
+    public long getThrottledWriteCount() {
+        return throttledWrites.sum();
+    }
+
+    private TokenBucket newBucket(double rate) {
+        return rate > 0 ? new TokenBucket(rate) : null;
+    }
+
+    /**
+     * The per-connection buckets of one client.
+     */
+    public class Client {
+        private final String address;
+        private final TokenBucket readBucket = newBucket(connectionReadRate);
+        private final TokenBucket writeBucket = newBucket(connectionWriteRate);
+
+        private Client(String address) {
+            this.address = address;
+        }
+    }
+
+    private class AddressBuckets {
+        private final TokenBucket readBucket = newBucket(addressReadRate);
+        private final TokenBucket writeBucket = newBucket(addressWriteRate);
+
+        boolean isIdle(long now) {
+            return (readBucket == null || readBucket.isIdle(now))
+                    && (writeBucket == null || writeBucket.isIdle(now));
+        }
+    }
+
+    /**
+     * A bucket refilled continuously at a fixed rate, holding at most one second of tokens.
+     */
+    private static class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double ratePerSecond) {
+            this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, ratePerSecond);
+            this.tokens = capacity;
+        }
+
+        // returns 0 if the tokens were taken, otherwise the nanoseconds until one is available
+        synchronized long tryTake(int cost, long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= cost;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerNano);
+        }
+
+        synchronized void refund(int cost) {
+            tokens = Math.min(capacity, tokens + cost);
+        }
+
+        // untouched for a while and refilled, so a new bucket would behave the same
+        synchronized boolean isIdle(long now) {
+            long elapsed = now - lastRefill;
+            return elapsed > IDLE_NANOS && tokens + elapsed * tokensPerNano >= capacity;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
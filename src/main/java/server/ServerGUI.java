@@ -1,5 +1,7 @@
 package server;
 
+import common.Compressor;
+
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
@@ -14,6 +16,7 @@ public class ServerGUI extends JFrame {
     // Components for displaying server information
     private JLabel statusLabel;
     private JLabel portLabel;
+    private JLabel modeLabel;
     private JLabel dictionaryFileLabel;
     private JLabel lastSaveTimeLabel;
 
@@ -23,6 +26,8 @@ public class ServerGUI extends JFrame {
     private JLabel queueSizeLabel;
     private JLabel completedTasksLabel;
     private JLabel rejectedTasksLabel;
+    private JLabel compressionLabel;
+    private JLabel throttledLabel;
 
     // Components for displaying client information
     private JLabel clientCountLabel;
@@ -39,7 +44,7 @@ public class ServerGUI extends JFrame {
         // Set up the JFrame
         setTitle("Dictionary Server Monitor");
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
-        setSize(600, 650);
+        setSize(600, 720);
         setLocationRelativeTo(null);
 
         // Set up the content pane with a border layout
@@ -53,13 +58,13 @@ public class ServerGUI extends JFrame {
 
         // Set up the server information panel
         JPanel serverInfoPanel = createServerInfoPanel();
-        serverInfoPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 120)); // limit height
+        serverInfoPanel.setMaximumSize(new Dimension(Integer.MAX_VALUE, 145)); // limit height
         mainPanel.add(serverInfoPanel);
         mainPanel.add(Box.createRigidArea(new Dimension(0, 10))); // add space
 
         // Set up the thread pool information panel
         JPanel threadPoolPanel = createThreadPoolPanel();
-        threadPoolPanel.setPreferredSize(new Dimension(600, 200)); // set preferred height
+        threadPoolPanel.setPreferredSize(new Dimension(600, 270)); // set preferred height
         mainPanel.add(threadPoolPanel);
         mainPanel.add(Box.createRigidArea(new Dimension(0, 10))); // add space
 
@@ -97,17 +102,19 @@ public class ServerGUI extends JFrame {
     }
 
     private JPanel createServerInfoPanel() {
-        JPanel panel = new JPanel(new GridLayout(4, 1, 5, 5));
+        JPanel panel = new JPanel(new GridLayout(5, 1, 5, 5));
         panel.setBorder(BorderFactory.createTitledBorder("Server Information"));
 
         statusLabel = new JLabel("Status: Running");
         statusLabel.setForeground(Color.GREEN.darker());
         portLabel = new JLabel("Port: " + server.getPort());
+        modeLabel = new JLabel("Mode: " + server.getMode());
         dictionaryFileLabel = new JLabel("Dictionary File: " + server.getDictionaryFile());
         lastSaveTimeLabel = new JLabel("Last Save: " + formatDate(lastSaveTime));
 
         panel.add(statusLabel);
         panel.add(portLabel);
+        panel.add(modeLabel);
         panel.add(dictionaryFileLabel);
         panel.add(lastSaveTimeLabel);
 
@@ -130,6 +137,8 @@ public class ServerGUI extends JFrame {
         queueSizeLabel = new JLabel("Queue Size: 0");
         completedTasksLabel = new JLabel("Completed Tasks: 0");
         rejectedTasksLabel = new JLabel("Rejected Tasks: 0");
+        compressionLabel = new JLabel("Compressed Responses: 0");
+        throttledLabel = new JLabel("Throttled Requests: 0");
 
         // set font and alignment
         poolSizeLabel.setFont(labelFont);
@@ -137,12 +146,16 @@ public class ServerGUI extends JFrame {
         queueSizeLabel.setFont(labelFont);
         completedTasksLabel.setFont(labelFont);
         rejectedTasksLabel.setFont(labelFont);
+        compressionLabel.setFont(labelFont);
+        throttledLabel.setFont(labelFont);
 
         poolSizeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         activeThreadsLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         queueSizeLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         completedTasksLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
         rejectedTasksLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        compressionLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        throttledLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
 
         // make sure the labels are not too wide
         statsPanel.add(poolSizeLabel);
@@ -154,11 +167,15 @@ public class ServerGUI extends JFrame {
         statsPanel.add(completedTasksLabel);
         statsPanel.add(Box.createRigidArea(new Dimension(0, 15)));
         statsPanel.add(rejectedTasksLabel);
+        statsPanel.add(Box.createRigidArea(new Dimension(0, 15)));
+        statsPanel.add(compressionLabel);
+        statsPanel.add(Box.createRigidArea(new Dimension(0, 15)));
+        statsPanel.add(throttledLabel);
 
         panel.add(statsPanel, BorderLayout.CENTER);
 
-        panel.setMinimumSize(new Dimension(600, 180));
-        panel.setPreferredSize(new Dimension(600, 180));
+        panel.setMinimumSize(new Dimension(600, 250));
+        panel.setPreferredSize(new Dimension(600, 250));
 
         return panel;
     }
@@ -194,9 +211,21 @@ public class ServerGUI extends JFrame {
         queueSizeLabel.setText("Queue Size: " + server.getThreadPool().getQueueSize());
         completedTasksLabel.setText("Completed Tasks: " + server.getThreadPool().getCompletedTaskCount());
         rejectedTasksLabel.setText("Rejected Tasks: " + server.getThreadPool().getRejectedTaskCount());
+        compressionLabel.setText(String.format("Compressed Responses: %d (ratio %.2f, avg %d us)",
+                Compressor.getCompressedMessageCount(),
+                Compressor.getCompressionRatio(),
+                Compressor.getAverageCompressMicros()));
+        RateLimiter rateLimiter = server.getRateLimiter();
+        if (rateLimiter != null) {
+            throttledLabel.setText(String.format("Throttled Requests: %d (reads %d, writes %d)",
+                    rateLimiter.getThrottledReadCount() + rateLimiter.getThrottledWriteCount(),
+                    rateLimiter.getThrottledReadCount(),
+                    rateLimiter.getThrottledWriteCount()));
+        }
 
         // Update client count
-        clientCountLabel.setText("Connected Clients: " + (server.getThreadPool().getActiveCount()));
+        clientCountLabel.setText("Connected Clients: " + server.getClientCount()
+                + " (accepting " + server.getAcceptRate() + "/s)");
 
         // If the server has a new save time, update it
         if (server.getLastSaveTime() != null && !server.getLastSaveTime().equals(lastSaveTime)) {
@@ -0,0 +1,128 @@
+package server;
+
+import java.io.BufferedWriter;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Compares the storage modes by what the whole process holds once a dictionary
+ * is loaded, the heap after a full collection plus direct buffers, so the
+ * indexes count as well as the word entries. Also times lookups of words
+ * spread over the whole dictionary and of a small hot set.
+ *
+ * Usage: java server.StorageBenchmark [words] [lookups] [storage,...] [--no-suggestions]
+ *
+ * Run one storage mode per JVM for the steadiest heap figures.
+ */
+public class StorageBenchmark {
+    private static final int HOT_WORDS = 1000;
+    private static final int VOCABULARY_SIZE = 20000; // distinct words in meanings
+    private static volatile Object sink; // keeps the JIT from dropping the lookups
+
+    public static void main(String[] args) throws Exception {
+        int wordCount = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 2000000;
+        String[] storages = args.length > 2 ? args[2].split(",")
+                : new String[] {Dictionary.STORAGE_MAP, Dictionary.STORAGE_COMPACT, Dictionary.STORAGE_OFF_HEAP};
+        boolean suggestions = !(args.length > 3 && "--no-suggestions".equals(args[3]));
+
+        Path file = Files.createTempFile("dictionary-benchmark-", ".txt");
+        try {
+            String[] words = writeDictionary(file, wordCount);
+            System.out.printf("%-8s %12s %12s %14s %14s %14s%n", "storage", "heap MB", "direct MB",
+                    "bytes/word", "spread ns", "hot ns");
+            for (String storage : storages) {
+                run(storage, suggestions, file, words, lookups);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void run(String storage, boolean suggestions, Path file, String[] words, int lookups) throws Exception {
+        sink = null; // the previous mode's dictionary
+        long heapBefore = usedHeap();
+        long directBefore = directMemory();
+
+        Dictionary dictionary = new Dictionary(storage, suggestions);
+        dictionary.loadFromFile(file.toString());
+
+        long heap = usedHeap() - heapBefore;
+        long direct = directMemory() - directBefore;
+
+        Random random = new Random(42);
+        double spread = 0;
+        double hot = 0;
+        // two rounds, the first one warms the JIT up
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink = dictionary.getMeanings(words[random.nextInt(words.length)]);
+            }
+            spread = (System.nanoTime() - start) / (double) lookups;
+
+            start = System.nanoTime();
+            for (int i = 0; i < lookups; i++) {
+                sink = dictionary.getMeanings(words[random.nextInt(HOT_WORDS)]);
+            }
+            hot = (System.nanoTime() - start) / (double) lookups;
+        }
+
+        System.out.printf("%-8s %12.1f %12.1f %14d %14.0f %14.0f%n", storage, heap / (1024.0 * 1024.0),
+                direct / (1024.0 * 1024.0), (heap + direct) / words.length, spread, hot);
+        sink = dictionary; // held until measured
+    }
+
+    // random lowercase words with one to three meanings of a few words each,
+    // drawn from a vocabulary where a few words are far more common than most
+    private static String[] writeDictionary(Path file, int wordCount) throws Exception {
+        Random random = new Random(1);
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = randomWord(random, 2 + random.nextInt(8));
+        }
+        String[] words = new String[wordCount];
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < wordCount; i++) {
+                words[i] = randomWord(random, 5 + random.nextInt(8)) + i;
+                int meanings = 1 + random.nextInt(3);
+                for (int m = 0; m < meanings; m++) {
+                    StringBuilder meaning = new StringBuilder();
+                    int length = 4 + random.nextInt(8);
+                    for (int w = 0; w < length; w++) {
+                        int index = (int) (vocabulary.length * Math.pow(random.nextDouble(), 3));
+                        meaning.append(w == 0 ? "" : " ").append(vocabulary[index]);
+                    }
+                    writer.write(words[i] + ": " + meaning);
+                    writer.newLine();
+                }
+            }
+        }
+        return words;
+    }
+
+    private static String randomWord(Random random, int length) {
+        char[] letters = new char[length];
+        for (int i = 0; i < length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long directMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,173 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Symmetric-delete index for "did you mean" suggestions. Every word is filed
+ * under itself and each string made by deleting one of its characters. A query
+ * looks up its own one-character deletes the same way, which finds every word
+ * within one edit without looking at any other key. Candidates are then ranked
+ * by their actual edit distance.
+ *
+ * Coverage is only complete within one edit. Of the words two edits away, a
+ * lookup only meets those where one character is deleted and another one
+ * inserted, such as a letter moved within the word; two substitutions, or two
+ * insertions or deletions, share no delete variant and are not found. Filing
+ * two-character deletes too would cover them at roughly length squared
+ * entries per word.
+ *
+ * The index is large: a word of n characters is filed under up to n + 1
+ * keys, each holding an array. On the synthetic dictionary of
+ * {@link StorageBenchmark} that came to about 1.7 KB per word, more than the
+ * words and meanings themselves take, or some 8.5 GB for five million words.
+ * A server that can do without suggestions is started with --no-suggestions
+ * and does not build it.
+ *
+ * Changes to one delete variant are atomic, so words can be added and removed
+ * concurrently with lookups.
+ */
+class SuggestionIndex {
+    // every word this close is found
+    static final int COMPLETE_DISTANCE = 1;
+    // candidates further away than this are dropped; up to it but beyond
+    // COMPLETE_DISTANCE only some words are met, see above
+    static final int MAX_DISTANCE = 2;
+    // longer words are filed by their first this many characters
+    private static final int MAX_WORD_LENGTH = 48;
+
+    private static final String[] NO_WORDS = new String[0];
+
+    // delete variant to the words it was made from; arrays are replaced, never changed
+    private final ConcurrentHashMap<String, String[]> variants = new ConcurrentHashMap<>();
+
+    void add(String word) {
+        for (String variant : variantsOf(word)) {
+            variants.compute(variant, (key, words) -> {
+                if (words == null) {
+                    return new String[] {word};
+                }
+                for (String existing : words) {
+                    if (existing.equals(word)) {
+                        return words;
+                    }
+                }
+                String[] grown = Arrays.copyOf(words, words.length + 1);
+                grown[words.length] = word;
+                return grown;
+            });
+        }
+    }
+
+    void remove(String word) {
+        for (String variant : variantsOf(word)) {
+            variants.computeIfPresent(variant, (key, words) -> {
+                int index = -1;
+                for (int i = 0; i < words.length; i++) {
+                    if (words[i].equals(word)) {
+                        index = i;
+                        break;
+                    }
+                }
+                if (index == -1) {
+                    return words;
+                }
+                if (words.length == 1) {
+                    return null;
+                }
+                String[] shrunk = new String[words.length - 1];
+                System.arraycopy(words, 0, shrunk, 0, index);
+                System.arraycopy(words, index + 1, shrunk, index, shrunk.length - index);
+                return shrunk;
+            });
+        }
+    }
+
+    /**
+     * Returns up to limit words close to the given one, nearest first, not
+     * including the word itself: every word within {@link #COMPLETE_DISTANCE}
+     * edits and some within {@link #MAX_DISTANCE}.
+     */
+    List<String> suggest(String word, int limit) {
+        Set<String> candidates = new HashSet<>();
+        for (String variant : variantsOf(word)) {
+            for (String candidate : variants.getOrDefault(variant, NO_WORDS)) {
+                candidates.add(candidate);
+            }
+        }
+        candidates.remove(word);
+
+        List<Suggestion> ranked = new ArrayList<>(candidates.size());
+        for (String candidate : candidates) {
+            int distance = distance(word, candidate);
+            if (distance <= MAX_DISTANCE) {
+                ranked.add(new Suggestion(candidate, distance));
+            }
+        }
+        ranked.sort(Comparator.comparingInt((Suggestion suggestion) -> suggestion.distance)
+                .thenComparing(suggestion -> suggestion.word));
+
+        List<String> suggestions = new ArrayList<>(Math.min(limit, ranked.size()));
+        for (int i = 0; i < ranked.size() && i < limit; i++) {
+            suggestions.add(ranked.get(i).word);
+        }
+        return suggestions;
+    }
+
+    // the word and every string with one of its characters deleted
+    private static Set<String> variantsOf(String word) {
+        String key = word.length() > MAX_WORD_LENGTH ? word.substring(0, MAX_WORD_LENGTH) : word;
+        Set<String> result = new HashSet<>(key.length() * 2 + 2);
+        result.add(key);
+        for (int i = 0; i < key.length(); i++) {
+            result.add(key.substring(0, i) + key.substring(i + 1));
+        }
+        return result;
+    }
+
+    // edit distance counting an adjacent transposition as one edit
+    static int distance(String a, String b) {
+        if (Math.abs(a.length() - b.length()) > MAX_DISTANCE) {
+            return MAX_DISTANCE + 1;
+        }
+
+        int[] previousRow = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            row[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int value = Math.min(Math.min(row[j] + 1, current[j - 1] + 1), row[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    value = Math.min(value, previousRow[j - 2] + 1);
+                }
+                current[j] = value;
+            }
+            int[] recycled = previousRow;
+            previousRow = row;
+            row = current;
+            current = recycled;
+        }
+        return row[b.length()];
+    }
+
+    private static class Suggestion {
+        final String word;
+        final int distance;
+
+        Suggestion(String word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+    }
+}
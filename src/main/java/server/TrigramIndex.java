@@ -0,0 +1,471 @@
+package server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+/**
+ * Trigram index over the words, for substring search. Every word gets an int
+ * id and each three-character run of it lists that id. The lists are sorted
+ * int arrays, so a fragment is found by intersecting the lists of its own
+ * trigrams and checking the few words left.
+ *
+ * Ids come from a counter, so adding a word almost always appends to the
+ * lists it is on; a writer that loses a race to a higher id inserts in place.
+ * Words loaded together get their ids in sorted order. Each list is changed
+ * through the map's own compute, so writers only wait for each other on a
+ * shared trigram, never on the index as a whole.
+ *
+ * A removed word's id is not handed out again. Once removed ids outnumber the
+ * live words, a rebuild with the live words renumbered from zero runs on the
+ * given executor, off the write path. Changes made meanwhile go to the current
+ * lists and to a log, which is replayed on the rebuilt ones before they are
+ * swapped in; only the snapshot and that swap hold writers off, lookups never.
+ */
+class TrigramIndex {
+    static final int GRAM_LENGTH = 3;
+    // words loaded per task when the index is built in parallel
+    private static final int BUILD_CHUNK_SIZE = 16 * 1024;
+    // ids per page of the id to word table
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    // removed ids below this are never worth a rebuild
+    private static final int MIN_COMPACT_IDS = 1024;
+
+    private final Executor compactor;
+    private volatile Generation generation = new Generation();
+    // shared by writers, exclusive for the rebuild's snapshot and swap
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+    // changes made while a rebuild runs, null otherwise
+    private volatile Queue<Change> changes;
+
+    TrigramIndex() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param compactor runs the rebuild that reclaims removed ids
+     */
+    TrigramIndex(Executor compactor) {
+        this.compactor = compactor;
+    }
+
+    void add(String word) {
+        swapLock.readLock().lock();
+        try {
+            addTo(generation, word);
+            Queue<Change> log = changes;
+            if (log != null) {
+                log.add(new Change(word, true));
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private static void addTo(Generation target, String word) {
+        int id = target.nextId.getAndIncrement();
+        if (target.ids.putIfAbsent(word, id) != null) {
+            target.removedIds.incrementAndGet(); // already indexed, the id goes unused
+            return;
+        }
+        // the word is in place before its id is published on any list
+        target.setWord(id, word);
+        for (String gram : gramsOf(word)) {
+            target.postings.compute(gram, (key, list) -> list == null ? new Postings(id) : list.insert(id));
+        }
+    }
+
+    /**
+     * Adds many words at once. Their trigrams are collected in parallel, a chunk
+     * of ids per task, and appended to the lists chunk by chunk so every list
+     * stays sorted.
+     */
+    void addAll(Collection<String> words) {
+        swapLock.readLock().lock();
+        try {
+            Generation current = generation;
+            String[] added = words.stream().filter(word -> !current.ids.containsKey(word)).sorted().toArray(String[]::new);
+            appendAll(current, added);
+            Queue<Change> log = changes;
+            if (log != null) {
+                for (String word : added) {
+                    log.add(new Change(word, true));
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // gives the words a run of new ids, in order, and adds them to the target's lists
+    private static void appendAll(Generation target, String[] added) {
+        int firstId = target.nextId.getAndAdd(added.length);
+        boolean[] fresh = new boolean[added.length];
+        for (int i = 0; i < added.length; i++) {
+            fresh[i] = target.ids.putIfAbsent(added[i], firstId + i) == null;
+            if (fresh[i]) {
+                target.setWord(firstId + i, added[i]);
+            } else {
+                target.removedIds.incrementAndGet();
+            }
+        }
+
+        int chunks = (added.length + BUILD_CHUNK_SIZE - 1) / BUILD_CHUNK_SIZE;
+        List<Map<String, IntList>> chunkGrams = IntStream.range(0, chunks).parallel()
+                .mapToObj(chunk -> {
+                    Map<String, IntList> grams = new HashMap<>();
+                    int end = Math.min(added.length, (chunk + 1) * BUILD_CHUNK_SIZE);
+                    for (int i = chunk * BUILD_CHUNK_SIZE; i < end; i++) {
+                        if (fresh[i]) {
+                            for (String gram : gramsOf(added[i])) {
+                                grams.computeIfAbsent(gram, key -> new IntList()).add(firstId + i);
+                            }
+                        }
+                    }
+                    return grams;
+                })
+                .toList(); // in chunk order
+
+        for (Map<String, IntList> grams : chunkGrams) {
+            for (Map.Entry<String, IntList> entry : grams.entrySet()) {
+                IntList chunkIds = entry.getValue();
+                target.postings.compute(entry.getKey(), (key, list) -> list == null
+                        ? new Postings(chunkIds.toArray()) : list.insertAll(chunkIds));
+            }
+        }
+    }
+
+    void remove(String word) {
+        boolean compact;
+        swapLock.readLock().lock();
+        try {
+            compact = removeFrom(generation, word);
+            Queue<Change> log = changes;
+            if (log != null) {
+                log.add(new Change(word, false));
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+
+        if (compact && compacting.compareAndSet(false, true)) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    // returns whether removed ids now outnumber the live words
+    private static boolean removeFrom(Generation target, String word) {
+        Integer id = target.ids.remove(word);
+        if (id == null) {
+            return false;
+        }
+        target.setWord(id, null);
+        for (String gram : gramsOf(word)) {
+            target.postings.computeIfPresent(gram, (key, list) -> list.without(id));
+        }
+        int removed = target.removedIds.incrementAndGet();
+        return removed >= MIN_COMPACT_IDS && removed > target.ids.size();
+    }
+
+    // renumbers the live words from zero into a new generation and publishes it
+    private void compact() {
+        try {
+            Queue<Change> log = new ConcurrentLinkedQueue<>();
+            String[] live;
+            swapLock.writeLock().lock();
+            try {
+                live = generation.ids.keySet().stream().sorted().toArray(String[]::new);
+                changes = log;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+
+            Generation compacted = new Generation();
+            appendAll(compacted, live);
+
+            swapLock.writeLock().lock();
+            try {
+                // changes to one word are logged in the order they were made
+                for (Change change : log) {
+                    if (change.added) {
+                        addTo(compacted, change.word);
+                    } else {
+                        removeFrom(compacted, change.word);
+                    }
+                }
+                generation = compacted;
+                changes = null;
+            } finally {
+                swapLock.writeLock().unlock();
+            }
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    // the number of ids handed out since the last rebuild, live or removed
+    int idCount() {
+        return generation.nextId.get();
+    }
+
+    /**
+     * Returns up to limit words containing the fragment. Lists are intersected
+     * lazily, one candidate at a time, so the walk stops as soon as enough
+     * words are found.
+     *
+     * A fragment shorter than {@link #GRAM_LENGTH} has no trigram to look up,
+     * so every word is checked in id order instead.
+     */
+    List<String> findContaining(String fragment, int limit) {
+        Generation current = generation;
+        if (fragment.length() < GRAM_LENGTH) {
+            List<String> matches = new ArrayList<>(Math.min(limit, 64));
+            int idCount = current.nextId.get();
+            for (int id = 0; id < idCount && matches.size() < limit; id++) {
+                String word = current.word(id);
+                if (word != null && word.contains(fragment)) {
+                    matches.add(word);
+                }
+            }
+            return matches;
+        }
+
+        List<String> grams = gramsOf(fragment);
+        Postings[] lists = new Postings[grams.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = current.postings.get(grams.get(i));
+            if (lists[i] == null) {
+                return new ArrayList<>(); // no word has every trigram
+            }
+        }
+        // walk the shortest list and seek in the others
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+        int[] cursors = new int[lists.length];
+
+        List<String> matches = new ArrayList<>(Math.min(limit, 64));
+        candidates:
+        for (int i = 0; i < lists[0].size && matches.size() < limit; i++) {
+            int id = lists[0].ids[i];
+            for (int j = 1; j < lists.length; j++) {
+                cursors[j] = lists[j].seek(id, cursors[j]);
+                if (cursors[j] >= lists[j].size) {
+                    break candidates; // a list has run out
+                }
+                if (lists[j].ids[cursors[j]] != id) {
+                    continue candidates;
+                }
+            }
+
+            // the trigrams may occur apart, check the word itself
+            String word = current.word(id);
+            if (word != null && word.contains(fragment)) {
+                matches.add(word);
+            }
+        }
+        return matches;
+    }
+
+    // the distinct trigrams of a word
+    private static List<String> gramsOf(String word) {
+        List<String> grams = new ArrayList<>(Math.max(0, word.length() - GRAM_LENGTH + 1));
+        for (int i = 0; i + GRAM_LENGTH <= word.length(); i++) {
+            String gram = word.substring(i, i + GRAM_LENGTH);
+            if (!grams.contains(gram)) {
+                grams.add(gram);
+            }
+        }
+        return grams;
+    }
+
+    // a word added or removed while a rebuild runs
+    private static class Change {
+        final String word;
+        final boolean added;
+
+        Change(String word, boolean added) {
+            this.word = word;
+            this.added = added;
+        }
+    }
+
+    // the lists and the id tables that belong together; a rebuild replaces them all
+    private static class Generation {
+        // trigram to the ids of the words containing it
+        final ConcurrentHashMap<String, Postings> postings = new ConcurrentHashMap<>();
+        // live word to its id
+        final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+        final AtomicInteger nextId = new AtomicInteger();
+        final AtomicInteger removedIds = new AtomicInteger(); // ids of removed words
+        // id to word in pages, null once removed; pages are added, never moved,
+        // so a word set in one is never lost to a copy
+        private volatile AtomicReferenceArray<String>[] pages = newPages(16);
+
+        String word(int id) {
+            AtomicReferenceArray<String>[] current = pages;
+            int page = id >>> PAGE_SHIFT;
+            return page < current.length && current[page] != null ? current[page].get(id & (PAGE_SIZE - 1)) : null;
+        }
+
+        void setWord(int id, String word) {
+            page(id >>> PAGE_SHIFT).set(id & (PAGE_SIZE - 1), word);
+        }
+
+        private AtomicReferenceArray<String> page(int index) {
+            AtomicReferenceArray<String>[] current = pages;
+            if (index < current.length && current[index] != null) {
+                return current[index];
+            }
+            // once per page of ids
+            synchronized (this) {
+                current = pages;
+                if (index >= current.length) {
+                    current = Arrays.copyOf(current, Math.max(index + 1, current.length * 2));
+                }
+                if (current[index] == null) {
+                    current[index] = new AtomicReferenceArray<>(PAGE_SIZE);
+                }
+                pages = current;
+                return current[index];
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static AtomicReferenceArray<String>[] newPages(int count) {
+            return new AtomicReferenceArray[count];
+        }
+    }
+
+    /**
+     * A sorted view of the first size ids of an array. Appending writes past the
+     * end of the view and returns a longer one over the same array, so views
+     * handed to readers never see the write. Ids that do not go at the end are
+     * merged into a new array.
+     */
+    static class Postings {
+        final int[] ids;
+        final int size;
+
+        Postings(int id) {
+            this(new int[] {id, 0}, 1);
+        }
+
+        Postings(int[] ids) {
+            this(ids, ids.length);
+        }
+
+        private Postings(int[] ids, int size) {
+            this.ids = ids;
+            this.size = size;
+        }
+
+        Postings append(int id) {
+            int[] target = size < ids.length ? ids : Arrays.copyOf(ids, size + (size >> 1) + 1);
+            target[size] = id;
+            return new Postings(target, size + 1);
+        }
+
+        Postings appendAll(IntList added) {
+            int[] target = size + added.size <= ids.length ? ids : Arrays.copyOf(ids, size + added.size + (size >> 1));
+            System.arraycopy(added.values, 0, target, size, added.size);
+            return new Postings(target, size + added.size);
+        }
+
+        // adds an id in order; ids from a counter almost always go at the end
+        Postings insert(int id) {
+            if (size == 0 || ids[size - 1] < id) {
+                return append(id);
+            }
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index >= 0) {
+                return this;
+            }
+            index = -index - 1;
+            int[] merged = new int[size + 1];
+            System.arraycopy(ids, 0, merged, 0, index);
+            merged[index] = id;
+            System.arraycopy(ids, index, merged, index + 1, size - index);
+            return new Postings(merged);
+        }
+
+        // adds sorted ids that share none with this list
+        Postings insertAll(IntList added) {
+            if (size == 0 || ids[size - 1] < added.values[0]) {
+                return appendAll(added);
+            }
+            int[] merged = new int[size + added.size];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < size && j < added.size) {
+                merged[k++] = ids[i] < added.values[j] ? ids[i++] : added.values[j++];
+            }
+            System.arraycopy(ids, i, merged, k, size - i);
+            System.arraycopy(added.values, j, merged, k + size - i, added.size - j);
+            return new Postings(merged);
+        }
+
+        // a new array, so existing views are not changed
+        Postings without(int id) {
+            int index = Arrays.binarySearch(ids, 0, size, id);
+            if (index < 0) {
+                return this;
+            }
+            if (size == 1) {
+                return null;
+            }
+            int[] remaining = new int[size - 1];
+            System.arraycopy(ids, 0, remaining, 0, index);
+            System.arraycopy(ids, index + 1, remaining, index, size - 1 - index);
+            return new Postings(remaining);
+        }
+
+        // the index of the first id not below the given one, galloping from start
+        int seek(int id, int start) {
+            if (start >= size || ids[start] >= id) {
+                return start;
+            }
+            int step = 1;
+            int low = start;
+            int high = start + step;
+            while (high < size && ids[high] < id) {
+                low = high;
+                step <<= 1;
+                high = start + step;
+            }
+            int index = Arrays.binarySearch(ids, low + 1, Math.min(high, size - 1) + 1, id);
+            return index >= 0 ? index : -index - 1;
+        }
+    }
+
+    // growable int array for building lists
+    private static class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package server;
+
+import common.BinaryCodec;
+import common.JsonCodec;
+import common.Protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Optional UDP listener for single-word SEARCH lookups, so short-lived clients can
+ * skip the TCP handshake. Each datagram carries one request, encoded as a JSON line
+ * or as a binary codec payload, and is answered with one datagram in the same encoding.
+ *
+ * Only SEARCH and PING are served. Anything else, and any answer larger than
+ * {@link #MAX_DATAGRAM_SIZE}, gets a USE_TCP response; mutations stay TCP-only
+ * because datagrams can be lost, duplicated or sent from a spoofed address.
+ * Malformed datagrams are dropped without an answer.
+ */
+public class UdpServer implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(UdpServer.class.getName());
+
+    // largest response sent, small enough to avoid IP fragmentation on common paths
+    public static final int MAX_DATAGRAM_SIZE = 1200;
+    private static final int RECEIVE_BUFFER_SIZE = 2048;
+
+    private final int port;
+    private final Dictionary dictionary;
+    private final RateLimiter rateLimiter;
+    private final JsonCodec jsonCodec = new JsonCodec(); // only used by the receiving thread
+
+    private DatagramChannel channel;
+    private volatile boolean running = false;
+
+    // Performance monitoring
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder redirectCount = new LongAdder();
+
+    /**
+     * @param rateLimiter charges lookups to the sender's address budget, may be null
+     */
+    public UdpServer(int port, Dictionary dictionary, RateLimiter rateLimiter) {
+        this.port = port;
+        this.dictionary = dictionary;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Binds the socket and starts the receiving thread.
+     */
+    public void start() throws IOException {
+        channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(port));
+        running = true;
+
+        Thread thread = new Thread(this, "DictionaryUDP");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Error closing UDP channel: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void run() {
+        ByteBuffer buffer = ByteBuffer.allocate(RECEIVE_BUFFER_SIZE);
+        while (running) {
+            try {
+                buffer.clear();
+                SocketAddress sender = channel.receive(buffer);
+                if (buffer.position() == buffer.capacity()) {
+                    continue; // probably truncated
+                }
+
+                byte[] response = handle(buffer.array(), buffer.position(), sender);
+                if (response != null) {
+                    channel.send(ByteBuffer.wrap(response), sender);
+                }
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.log(Level.WARNING, "Error handling UDP request: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    // returns the encoded response, or null to drop the datagram
+    private byte[] handle(byte[] datagram, int length, SocketAddress sender) {
+        if (length == 0) {
+            return null;
+        }
+        boolean json = datagram[0] == '{';
+        while (json && length > 0 && (datagram[length - 1] == '\n' || datagram[length - 1] == '\r')) {
+            length--; // a JSON line may keep its line break
+        }
+
+        Protocol.Message request;
+        try {
+            request = json ? jsonCodec.decode(datagram, 0, length) : BinaryCodec.decode(datagram, 0, length);
+        } catch (IOException e) {
+            return null;
+        }
+        if (request == null) {
+            return null;
+        }
+        requestCount.increment();
+
+        String address = ((InetSocketAddress) sender).getAddress().getHostAddress();
+        Protocol.Message response = processRequest(request, address);
+        byte[] encoded = json ? jsonCodec.encode(response) : BinaryCodec.encode(response);
+        if (encoded.length > MAX_DATAGRAM_SIZE) {
+            response = createUseTcpResponse(request, "Response too large for UDP");
+            encoded = json ? jsonCodec.encode(response) : BinaryCodec.encode(response);
+        }
+        return encoded;
+    }
+
+    private Protocol.Message processRequest(Protocol.Message request, String address) {
+        if (Protocol.PING.equals(request.getOperation())) {
+            Protocol.Message response = startResponse(request);
+            response.setOperation(Protocol.PONG);
+            response.setStatus(Protocol.SUCCESS);
+            return response;
+        }
+        if (!Protocol.SEARCH.equals(request.getOperation())) {
+            return createUseTcpResponse(request, "Only SEARCH is served over UDP");
+        }
+
+        Protocol.Message response = startResponse(request);
+        long retryAfter = rateLimiter != null ? rateLimiter.tryAcquire(address, 1, 0) : 0;
+        if (retryAfter > 0) {
+            response.setStatus(Protocol.THROTTLED);
+            response.setErrorMessage("Request rate limit exceeded. Please slow down.");
+            response.setRetryAfterMillis(retryAfter);
+            return response;
+        }
+
+        try {
+            ClientHandler.setSearchResult(response, dictionary.getMeanings(request.getWord()));
+        } catch (DictionaryException e) {
+            response.setStatus(Protocol.ERROR);
+            response.setErrorMessage(e.getMessage() + " (Error code: " + e.getErrorCode() + ")");
+        }
+        return response;
+    }
+
+    private Protocol.Message createUseTcpResponse(Protocol.Message request, String reason) {
+        redirectCount.increment();
+        Protocol.Message response = startResponse(request);
+        response.setStatus(Protocol.USE_TCP);
+        response.setErrorMessage(reason);
+        return response;
+    }
+
+    private static Protocol.Message startResponse(Protocol.Message request) {
+        Protocol.Message response = new Protocol.Message();
+        response.setOperation(request.getOperation());
+        response.setWord(request.getWord());
+        response.setRequestId(request.getRequestId());
+        return response;
+    }
+
+    // Getters for monitoring
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    public long getRedirectCount() {
+        return redirectCount.sum();
+    }
+}
@@ -0,0 +1,122 @@
+package server;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs every task on its own virtual thread. There is no queue and no thread cap,
+ * so tasks are only rejected after shutdown. Blocking socket reads park the
+ * virtual thread instead of holding a platform thread.
+ */
+public class VirtualThreadPool implements WorkerPool {
+    private static final Logger LOGGER = Logger.getLogger(VirtualThreadPool.class.getName());
+
+    private final Thread.Builder threadBuilder = Thread.ofVirtual().name("DictionaryVirtual-", 1);
+    private final Set<Thread> liveThreads = ConcurrentHashMap.newKeySet();
+
+    // Lifecycle management
+    private volatile boolean isShutdown = false;
+
+    // Performance monitoring
+    private final AtomicInteger completedTasks = new AtomicInteger(0);
+    private final AtomicInteger rejectedTasks = new AtomicInteger(0);
+
+    @Override
+    public boolean execute(Runnable task) {
+        if (isShutdown) {
+            rejectedTasks.incrementAndGet();
+            LOGGER.warning("Task rejected - pool is shutdown");
+            return false;
+        }
+
+        Thread thread = threadBuilder.unstarted(() -> {
+            try {
+                task.run();
+                completedTasks.incrementAndGet();
+            } catch (Throwable t) {
+                LOGGER.log(Level.SEVERE, "Task execution failed", t);
+            } finally {
+                liveThreads.remove(Thread.currentThread());
+            }
+        });
+        liveThreads.add(thread);
+        thread.start();
+        return true;
+    }
+
+    // every accepted task is already running, so there is nothing to wake
+    @Override
+    public void shutdown() {
+        isShutdown = true;
+        LOGGER.info("Virtual thread pool shutdown initiated");
+    }
+
+    @Override
+    public void shutdownNow() {
+        isShutdown = true;
+
+        for (Thread thread : liveThreads) {
+            thread.interrupt();
+        }
+
+        LOGGER.info("Virtual thread pool stopped");
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long endTime = System.nanoTime() + unit.toNanos(timeout);
+
+        for (Thread thread : liveThreads) {
+            long remaining = endTime - System.nanoTime();
+            if (remaining <= 0 || !thread.join(Duration.ofNanos(remaining))) {
+                return liveThreads.isEmpty();
+            }
+        }
+
+        return liveThreads.isEmpty();
+    }
+
+    // Every live virtual thread counts as both a pool member and an active thread,
+    // which matches what the platform pool reports for one thread per connection
+    @Override
+    public int getPoolSize() {
+        return liveThreads.size();
+    }
+
+    @Override
+    public int getActiveCount() {
+        return liveThreads.size();
+    }
+
+    @Override
+    public int getQueueSize() {
+        return 0;
+    }
+
+    @Override
+    public int getCompletedTaskCount() {
+        return completedTasks.get();
+    }
+
+    @Override
+    public int getRejectedTaskCount() {
+        return rejectedTasks.get();
+    }
+
+    // tasks start immediately on their own thread
+    @Override
+    public long getQueueLatencyMillis() {
+        return 0;
+    }
+
+    // only a shutting down pool rejects, so ask clients to wait for the restart
+    @Override
+    public long getRetryAfterMillis() {
+        return 1000;
+    }
+}
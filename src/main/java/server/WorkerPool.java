@@ -0,0 +1,59 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Common interface of the executors that run client work, so the server and
+ * the monitor window can use either execution mode with the same metrics.
+ */
+public interface WorkerPool {
+    /**
+     * Executes the given task sometime in the future.
+     *
+     * @param task the task to execute
+     * @return true if the task was accepted, false if it was rejected
+     */
+    boolean execute(Runnable task);
+
+    /**
+     * Initiates an orderly shutdown of the pool. No new tasks are accepted, but
+     * running and already accepted tasks are completed.
+     */
+    void shutdown();
+
+    /**
+     * Stops immediately, dropping tasks that have not started and interrupting
+     * the running ones.
+     */
+    void shutdownNow();
+
+    /**
+     * Blocks until all tasks have completed after a shutdown request, or the timeout occurs.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout argument
+     * @return true if the pool terminated and false if the timeout elapsed before termination
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+
+    // Monitoring
+    int getPoolSize();
+
+    int getActiveCount();
+
+    int getQueueSize();
+
+    int getCompletedTaskCount();
+
+    int getRejectedTaskCount();
+
+    // smoothed time accepted tasks spend waiting for a worker
+    long getQueueLatencyMillis();
+
+    /**
+     * Suggested back-off for a client whose work was rejected, derived from the
+     * current queueing delay.
+     */
+    long getRetryAfterMillis();
+}
@@ -0,0 +1,256 @@
+package common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryCodecTest {
+
+    @Test
+    public void roundTripsEveryField() throws IOException {
+        Protocol.Message message = fullMessage();
+
+        assertSameMessage(message, roundTrip(message));
+    }
+
+    @Test
+    public void roundTripsAnEmptyMessage() throws IOException {
+        Protocol.Message message = new Protocol.Message();
+
+        byte[] payload = BinaryCodec.encode(message);
+        assertEquals(5, payload.length); // three code bytes and two empty lists
+        assertSameMessage(message, BinaryCodec.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    public void roundTripsBatches() throws IOException {
+        List<Protocol.Message> items = new ArrayList<>();
+        items.add(Protocol.createSearchRequest("apple"));
+        items.add(Protocol.createAddRequest("pear", "a fruit"));
+        items.add(Protocol.createUpdateMeaningRequest("pear", "a fruit", "a sweet fruit"));
+
+        Protocol.Message batch = Protocol.createBatchRequest(items);
+        assertSameMessage(batch, roundTrip(batch));
+    }
+
+    @Test
+    public void rejectsItemsInsideItems() {
+        List<Protocol.Message> inner = new ArrayList<>();
+        inner.add(Protocol.createSearchRequest("apple"));
+        List<Protocol.Message> outer = new ArrayList<>();
+        outer.add(Protocol.createBatchRequest(inner));
+        byte[] payload = BinaryCodec.encode(Protocol.createBatchRequest(outer));
+
+        IOException e = assertThrows(IOException.class, () -> BinaryCodec.decode(payload, 0, payload.length));
+        assertEquals("Items cannot be nested", e.getMessage());
+    }
+
+    @Test
+    public void keepsNullListEntries() throws IOException {
+        Protocol.Message message = new Protocol.Message();
+        message.setResults(new ArrayList<>(Arrays.asList("first", null, "", "last")));
+        message.setParams(new ArrayList<>(Arrays.asList(null, "x")));
+
+        Protocol.Message decoded = roundTrip(message);
+        assertEquals(Arrays.asList("first", null, "", "last"), decoded.getResults());
+        assertEquals(Arrays.asList(null, "x"), decoded.getParams());
+    }
+
+    @Test
+    public void sendsUnknownOperationsAndStatusesLiterally() throws IOException {
+        Protocol.Message message = new Protocol.Message();
+        message.setOperation("FUTURE_OPERATION");
+        message.setStatus("FUTURE_STATUS");
+
+        Protocol.Message decoded = roundTrip(message);
+        assertEquals("FUTURE_OPERATION", decoded.getOperation());
+        assertEquals("FUTURE_STATUS", decoded.getStatus());
+    }
+
+    @Test
+    public void roundTripsMultiByteText() throws IOException {
+        Protocol.Message message = Protocol.createAddRequest("café", "ein Getränk ☕ 😀");
+
+        assertSameMessage(message, roundTrip(message));
+    }
+
+    @Test
+    public void roundTripsLongValues() throws IOException {
+        Protocol.Message message = new Protocol.Message();
+        message.setRequestId(Long.MIN_VALUE);
+        message.setRetryAfterMillis((long) Integer.MAX_VALUE);
+        message.addResult("x".repeat(100000));
+
+        Protocol.Message decoded = roundTrip(message);
+        assertEquals(Long.valueOf(Long.MIN_VALUE), decoded.getRequestId());
+        assertEquals(Long.valueOf(Integer.MAX_VALUE), decoded.getRetryAfterMillis());
+        assertEquals(100000, decoded.getResults().get(0).length());
+    }
+
+    @Test
+    public void rejectsEveryTruncatedPayload() {
+        byte[] payload = BinaryCodec.encode(fullMessage());
+
+        for (int length = 0; length < payload.length; length++) {
+            int truncated = length;
+            assertThrows("length " + length, IOException.class,
+                    () -> BinaryCodec.decode(payload, 0, truncated));
+        }
+    }
+
+    @Test
+    public void rejectsUnknownCodes() {
+        byte[] payload = {(byte) 200, 0, 0, 0, 0};
+
+        IOException e = assertThrows(IOException.class, () -> BinaryCodec.decode(payload, 0, payload.length));
+        assertEquals("Unknown code: 200", e.getMessage());
+    }
+
+    @Test
+    public void rejectsOverlongVarInts() {
+        // a param count whose varint never ends
+        byte[] payload = {0, 0, 0, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0};
+
+        IOException e = assertThrows(IOException.class, () -> BinaryCodec.decode(payload, 0, payload.length));
+        assertEquals("Malformed varint", e.getMessage());
+    }
+
+    @Test
+    public void rejectsListsLongerThanThePayload() {
+        byte[] payload = {0, 0, 0, 100, 1};
+
+        assertThrows(IOException.class, () -> BinaryCodec.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    public void rejectsItemsLongerThanThePayload() {
+        // flags say items follow: one item of 50 bytes, with only two present
+        byte[] payload = {0, 0, 8, 0, 0, 1, 50, 0, 0};
+
+        assertThrows(IOException.class, () -> BinaryCodec.decode(payload, 0, payload.length));
+    }
+
+    @Test
+    public void decodesAtAnOffset() throws IOException {
+        Protocol.Message message = fullMessage();
+        byte[] payload = BinaryCodec.encode(message);
+        byte[] padded = new byte[payload.length + 10];
+        System.arraycopy(payload, 0, padded, 7, payload.length);
+
+        assertSameMessage(message, BinaryCodec.decode(padded, 7, payload.length));
+    }
+
+    @Test
+    public void readsFramesWrittenToAStream() throws IOException {
+        Protocol.Message first = fullMessage();
+        Protocol.Message second = Protocol.createPingRequest();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        BinaryCodec.write(first, out);
+        BinaryCodec.write(second, out);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertSameMessage(first, BinaryCodec.read(in));
+        assertSameMessage(second, BinaryCodec.read(in));
+        assertNull(BinaryCodec.read(in)); // clean end of stream
+    }
+
+    @Test
+    public void compressesLargeFrames() throws IOException {
+        Protocol.Message message = new Protocol.Message();
+        for (int i = 0; i < 200; i++) {
+            message.addResult("a meaning that repeats " + (i % 3));
+        }
+        Compressor compressor = new Compressor();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        BinaryCodec.write(message, out, compressor, Compressor.DEFAULT_THRESHOLD);
+        out.flush();
+        byte[] frame = bytes.toByteArray();
+
+        assertTrue(frame.length < BinaryCodec.encode(message).length);
+        assertTrue((frame[0] & 0x80) != 0);
+        assertSameMessage(message, BinaryCodec.read(new DataInputStream(new ByteArrayInputStream(frame)), compressor));
+
+        // a compressed frame cannot be read without a compressor
+        assertThrows(IOException.class,
+                () -> BinaryCodec.read(new DataInputStream(new ByteArrayInputStream(frame))));
+    }
+
+    @Test
+    public void rejectsOversizedFrames() {
+        byte[] frame = {0x01, 0x00, 0x00, 0x01}; // just over 16 MB
+
+        assertThrows(IOException.class, () -> BinaryCodec.read(new DataInputStream(new ByteArrayInputStream(frame))));
+    }
+
+    @Test
+    public void failsOnAFrameCutShort() {
+        byte[] frame = {0, 0, 0, 10, 1, 2, 3};
+
+        assertThrows(EOFException.class, () -> BinaryCodec.read(new DataInputStream(new ByteArrayInputStream(frame))));
+    }
+
+    @Test
+    public void tellsWhetherAFrameIsComplete() {
+        byte[] payload = BinaryCodec.encode(fullMessage());
+        byte[] frame = new byte[payload.length + 4];
+        frame[0] = (byte) (payload.length >>> 24);
+        frame[1] = (byte) (payload.length >>> 16);
+        frame[2] = (byte) (payload.length >>> 8);
+        frame[3] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 4, payload.length);
+
+        assertFalse(BinaryCodec.hasCompleteFrame(frame, 0, 3));
+        assertFalse(BinaryCodec.hasCompleteFrame(frame, 0, frame.length - 1));
+        assertTrue(BinaryCodec.hasCompleteFrame(frame, 0, frame.length));
+    }
+
+    @Test
+    public void encodesTheSameMessageToTheSameBytes() {
+        assertArrayEquals(BinaryCodec.encode(fullMessage()), BinaryCodec.encode(fullMessage()));
+    }
+
+    // every field set, with known and unknown codes mixed in the items
+    private static Protocol.Message fullMessage() {
+        Protocol.Message message = new Protocol.Message();
+        message.setOperation(Protocol.SEARCH);
+        message.setStatus(Protocol.MEANING_NOT_FOUND);
+        message.setRequestId(1234567890123L);
+        message.setWord("apple");
+        message.addParam(Protocol.SEARCH_WITH_SUGGESTIONS);
+        message.addResult("A round fruit");
+        message.addResult("A company");
+        message.addItem(Protocol.createSearchRequest("pear"));
+        message.setErrorMessage("something went wrong");
+        message.setRetryAfterMillis(250L);
+        message.setSuggestions(new ArrayList<>(List.of("apples", "ample")));
+        return message;
+    }
+
+    private static Protocol.Message roundTrip(Protocol.Message message) throws IOException {
+        byte[] payload = BinaryCodec.encode(message);
+        return BinaryCodec.decode(payload, 0, payload.length);
+    }
+
+    // messages have no equals, Gson writes every field
+    private static void assertSameMessage(Protocol.Message expected, Protocol.Message actual) {
+        assertEquals(Protocol.toJson(expected), Protocol.toJson(actual));
+    }
+}
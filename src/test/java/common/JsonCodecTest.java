@@ -0,0 +1,212 @@
+package common;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class JsonCodecTest {
+    private final JsonCodec codec = new JsonCodec();
+
+    @Test
+    public void encodesLikeGson() {
+        for (Protocol.Message message : sampleMessages()) {
+            assertArrayEquals(Protocol.toJson(message), gsonLine(message), codec.encode(message));
+        }
+    }
+
+    @Test
+    public void decodesWhatGsonWrites() throws IOException {
+        for (Protocol.Message message : sampleMessages()) {
+            byte[] line = gsonLine(message);
+            Protocol.Message decoded = codec.decode(line, 0, line.length - 1);
+            assertEquals(Protocol.toJson(message), Protocol.toJson(decoded));
+        }
+    }
+
+    @Test
+    public void gsonReadsWhatTheCodecWrites() {
+        for (Protocol.Message message : sampleMessages()) {
+            String line = new String(codec.encode(message), StandardCharsets.UTF_8).trim();
+            assertEquals(Protocol.toJson(message), Protocol.toJson(Protocol.fromJson(line)));
+        }
+    }
+
+    @Test
+    public void returnsTheSharedConstantsForKnownValues() throws IOException {
+        byte[] line = "{\"operation\":\"SEARCH\",\"status\":\"SUCCESS\",\"word\":\"SEARCH\"}".getBytes(StandardCharsets.UTF_8);
+
+        Protocol.Message message = codec.decode(line, 0, line.length);
+        assertSame(Protocol.SEARCH, message.getOperation());
+        assertSame(Protocol.SUCCESS, message.getStatus());
+    }
+
+    @Test
+    public void readsEscapesAndWhitespace() throws IOException {
+        String json = " { \"word\" : \"a\\\"b\\\\c\\/d\\n\\u00e9\" ,\r\n \"results\" : [ \"x\" , null ] } ";
+        byte[] line = json.getBytes(StandardCharsets.UTF_8);
+
+        Protocol.Message message = codec.decode(line, 0, line.length);
+        assertEquals("a\"b\\c/d\né", message.getWord());
+        assertEquals(Arrays.asList("x", null), message.getResults());
+    }
+
+    @Test
+    public void skipsUnknownFields() throws IOException {
+        String json = "{\"future\":{\"nested\":[1,2,{\"a\":\"}\"}]},\"word\":\"kept\",\"flag\":true,\"n\":-1.5e3}";
+        byte[] line = json.getBytes(StandardCharsets.UTF_8);
+
+        assertEquals("kept", codec.decode(line, 0, line.length).getWord());
+    }
+
+    @Test
+    public void treatsBlankLinesAsNoMessage() throws IOException {
+        byte[] line = "   \r".getBytes(StandardCharsets.UTF_8);
+
+        assertNull(codec.decode(line, 0, line.length));
+    }
+
+    @Test
+    public void rejectsMalformedLines() {
+        for (String json : List.of("{\"word\":", "{\"word\":\"open", "[1]", "{\"word\" \"x\"}",
+                "{\"requestId\":\"x\"}", "{\"results\":[\"a\" \"b\"]}", "{\"word\":\"\\q\"}")) {
+            byte[] line = json.getBytes(StandardCharsets.UTF_8);
+            assertThrows(json, IOException.class, () -> codec.decode(line, 0, line.length));
+        }
+    }
+
+    @Test
+    public void rejectsItemsInsideItems() {
+        byte[] nested = "{\"items\":[{\"items\":[{\"word\":\"x\"}]}]}".getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> codec.decode(nested, 0, nested.length));
+
+        // deep enough to overflow the stack if items were parsed recursively
+        byte[] deep = "{\"items\":[".repeat(20000).getBytes(StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> codec.decode(deep, 0, deep.length));
+    }
+
+    @Test
+    public void readsAndWritesStreams() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonCodec writer = new JsonCodec(null, bytes);
+        for (Protocol.Message message : sampleMessages()) {
+            writer.write(message);
+        }
+        bytes.write("\n\n".getBytes(StandardCharsets.UTF_8)); // blank lines are skipped
+        writer.write(Protocol.createPingRequest());
+
+        JsonCodec reader = new JsonCodec(new ByteArrayInputStream(bytes.toByteArray()), null);
+        for (Protocol.Message message : sampleMessages()) {
+            assertEquals(Protocol.toJson(message), Protocol.toJson(reader.read()));
+        }
+        assertEquals(Protocol.PING, reader.read().getOperation());
+        assertNull(reader.read());
+    }
+
+    @Test
+    public void reusesTheMessageItReadsInto() throws IOException {
+        byte[] lines = "{\"word\":\"first\",\"results\":[\"a\"]}\n{\"word\":\"second\"}\n".getBytes(StandardCharsets.UTF_8);
+        JsonCodec reader = new JsonCodec(new ByteArrayInputStream(lines), null);
+        Protocol.Message message = new Protocol.Message();
+
+        assertTrue(reader.read(message));
+        assertEquals("first", message.getWord());
+        assertTrue(reader.read(message));
+        assertEquals("second", message.getWord());
+        assertTrue(message.getResults().isEmpty()); // cleared in between
+        assertFalse(reader.read(message));
+    }
+
+    @Test
+    public void handsBackBytesAfterTheLine() throws IOException {
+        byte[] input = "{\"word\":\"x\"}\nRAW".getBytes(StandardCharsets.UTF_8);
+        JsonCodec reader = new JsonCodec(new ByteArrayInputStream(input), null);
+
+        assertEquals("x", reader.read().getWord());
+        byte[] raw = new byte[3];
+        assertEquals(3, reader.readRaw(raw, 0, 3));
+        assertEquals("RAW", new String(raw, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void compressesLargeMessagesOnceEnabled() throws IOException {
+        Protocol.Message message = new Protocol.Message();
+        for (int i = 0; i < 100; i++) {
+            message.addResult("a meaning that repeats itself " + (i % 4));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonCodec writer = new JsonCodec(null, bytes);
+        writer.enableCompression(Compressor.DEFAULT_THRESHOLD);
+        writer.write(message);
+        writer.write(Protocol.createPingRequest()); // too small to compress
+
+        byte[] written = bytes.toByteArray();
+        assertEquals('~', written[0]);
+        assertTrue(written.length < codec.encode(message).length);
+
+        JsonCodec reader = new JsonCodec(new ByteArrayInputStream(written), null);
+        assertEquals(Protocol.toJson(message), Protocol.toJson(reader.read()));
+        assertEquals(Protocol.PING, reader.read().getOperation());
+    }
+
+    @Test
+    public void rejectsBrokenCompressedLines() {
+        byte[] line = "~not base64!".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(IOException.class, () -> codec.decode(line, 0, line.length));
+    }
+
+    // messages Gson and the codec must write identically; lists are never empty,
+    // since Gson writes an empty list where the codec leaves it out
+    private static List<Protocol.Message> sampleMessages() {
+        List<Protocol.Message> messages = new ArrayList<>();
+        messages.add(new Protocol.Message());
+        messages.add(Protocol.createSearchRequest("apple"));
+        messages.add(Protocol.createSearchRequest("apple", true));
+        messages.add(Protocol.createUpdateMeaningRequest("word", "old", "new"));
+        messages.add(Protocol.createBusyResponse(Protocol.createSearchRequest("x"), 1500));
+        messages.add(Protocol.createReconnectNotice(1000));
+
+        Protocol.Message response = new Protocol.Message();
+        response.setOperation(Protocol.SEARCH);
+        response.setStatus(Protocol.MEANING_NOT_FOUND);
+        response.setRequestId(-42L);
+        response.setWord("aple");
+        response.setSuggestions(new ArrayList<>(List.of("apple", "ample")));
+        messages.add(response);
+
+        // characters Gson escapes: quotes, backslashes, controls and HTML-sensitive ones
+        Protocol.Message escaped = new Protocol.Message();
+        escaped.setWord("quote \" backslash \\ slash / tab \t newline \n bell \u0007");
+        escaped.addResult("<b>bold</b> & 'single' = \u2028\u2029");
+        escaped.addResult("café ☕ 😀");
+        escaped.addResult(null);
+        escaped.setErrorMessage("");
+        messages.add(escaped);
+
+        List<Protocol.Message> items = new ArrayList<>();
+        items.add(Protocol.createAddRequest("pear", "a fruit"));
+        items.add(response);
+        Protocol.Message batch = Protocol.createBatchRequest(items);
+        batch.setRequestId(Long.MAX_VALUE);
+        messages.add(batch);
+        return messages;
+    }
+
+    private static byte[] gsonLine(Protocol.Message message) {
+        return (Protocol.toJson(message) + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,178 @@
+package server;
+
+import common.Protocol;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class CompactWordStoreTest {
+
+    @Test
+    public void findsStoredWords() {
+        CompactWordStore store = CompactWordStore.build(sample(), false);
+
+        assertEquals(List.of("A round fruit", "A company"), store.get("apple"));
+        assertEquals(List.of("A yellow fruit"), store.get("banana"));
+        assertEquals(List.of(), store.get("empty"));
+        assertTrue(store.contains("apple"));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void returnsNullForAbsentWords() {
+        CompactWordStore store = CompactWordStore.build(sample(), false);
+
+        assertNull(store.get("cherry"));
+        assertNull(store.get("appl"));
+        assertNull(store.get("apples"));
+        assertNull(store.get(""));
+        assertFalse(store.contains("Apple"));
+    }
+
+    @Test
+    public void buildsAnEmptyStore() {
+        CompactWordStore store = CompactWordStore.build(Map.of(), false);
+
+        assertEquals(0, store.size());
+        assertNull(store.get("anything"));
+        store.forEach((word, meanings) -> { throw new AssertionError(word); });
+    }
+
+    @Test
+    public void keepsMultiByteText() {
+        Map<String, List<String>> entries = new HashMap<>();
+        entries.put("café", List.of("ein Getränk ☕", "😀"));
+        entries.put("straße", List.of(""));
+        CompactWordStore store = CompactWordStore.build(entries, false);
+
+        assertEquals(List.of("ein Getränk ☕", "😀"), store.get("café"));
+        assertEquals(List.of(""), store.get("straße"));
+        assertNull(store.get("cafe"));
+    }
+
+    @Test
+    public void tellsApartWordsWithTheSameHash() {
+        // "Aa" and "BB" hash alike, and so does every word made of them
+        Map<String, List<String>> entries = new HashMap<>();
+        for (String word : List.of("AaAa", "AaBB", "BBAa", "BBBB")) {
+            entries.put(word, List.of("meaning of " + word));
+        }
+        CompactWordStore store = CompactWordStore.build(entries, false);
+
+        for (String word : entries.keySet()) {
+            assertEquals(List.of("meaning of " + word), store.get(word));
+        }
+        assertNull(store.get("AaAaAa"));
+    }
+
+    @Test
+    public void findsEveryWordOfAFullTable() {
+        Map<String, List<String>> entries = new HashMap<>();
+        for (int i = 0; i < 20000; i++) {
+            entries.put("word" + i, List.of("meaning " + i));
+        }
+        CompactWordStore store = CompactWordStore.build(entries, false);
+
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(List.of("meaning " + i), store.get("word" + i));
+        }
+        assertFalse(store.contains("word20000"));
+        assertTrue(store.byteSize() > 0);
+    }
+
+    @Test
+    public void visitsEveryEntryOnce() {
+        Map<String, List<String>> visited = new HashMap<>();
+        CompactWordStore.build(sample(), false).forEach((word, meanings) ->
+                assertNull(word, visited.put(word, meanings)));
+
+        assertEquals(sample(), visited);
+    }
+
+    @Test
+    public void worksOffHeap() {
+        CompactWordStore store = CompactWordStore.build(sample(), true);
+
+        assertEquals(List.of("A round fruit", "A company"), store.get("apple"));
+        assertNull(store.get("cherry"));
+        Map<String, List<String>> visited = new HashMap<>();
+        store.forEach(visited::put);
+        assertEquals(sample(), visited);
+    }
+
+    @Test
+    public void spreadsLargeEntriesOverSeveralChunks() {
+        // two entries of about 10 MB cannot share a 16 MB chunk
+        Map<String, List<String>> entries = new LinkedHashMap<>();
+        entries.put("first", List.of("a".repeat(10 << 20)));
+        entries.put("second", List.of("b".repeat(10 << 20)));
+        entries.put("third", List.of("small"));
+        CompactWordStore store = CompactWordStore.build(entries, false);
+
+        assertEquals(10 << 20, store.get("first").get(0).length());
+        assertEquals('b', store.get("second").get(0).charAt(0));
+        assertEquals(List.of("small"), store.get("third"));
+    }
+
+    @Test
+    public void rejectsEntriesLargerThanAChunk() {
+        Map<String, List<String>> entries = Map.of("huge", List.of("x".repeat(1 << 24)));
+
+        assertThrows(IllegalArgumentException.class, () -> CompactWordStore.build(entries, false));
+    }
+
+    @Test
+    public void dictionaryLayersChangesOverTheStore() throws Exception {
+        for (String storage : List.of(Dictionary.STORAGE_COMPACT, Dictionary.STORAGE_OFF_HEAP)) {
+            Path file = Files.createTempFile("compact-", ".txt");
+            try {
+                Files.write(file, List.of("apple: A round fruit", "apple: A company", "banana: A yellow fruit",
+                        "cherry: A small red fruit"));
+                Dictionary dictionary = new Dictionary(storage);
+                dictionary.loadFromFile(file.toString());
+                assertEquals(List.of("A round fruit", "A company"), dictionary.getMeanings("apple"));
+
+                // changes to loaded words go to the map and hide the stored entry
+                dictionary.addMeaning("banana", "A curved fruit");
+                dictionary.removeWord("cherry");
+                dictionary.addWord("date", "A sweet fruit");
+                assertEquals(List.of("A yellow fruit", "A curved fruit"), dictionary.getMeanings("banana"));
+                assertNull(dictionary.getVersionedMeanings("cherry"));
+                assertEquals(Protocol.DUPLICATE, dictionary.addWord("apple", "again").getStatusCode());
+
+                // a removed loaded word can come back
+                dictionary.addWord("cherry", "A stone fruit");
+                assertEquals(List.of("A stone fruit"), dictionary.getMeanings("cherry"));
+
+                // snapshots hold the stored words and the changes alike
+                dictionary.saveToFile(file.toString());
+                Dictionary reloaded = new Dictionary();
+                reloaded.loadFromFile(file.toString());
+                for (String word : List.of("apple", "banana", "cherry", "date")) {
+                    assertEquals(storage + " " + word, dictionary.getMeanings(word), reloaded.getMeanings(word));
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static Map<String, List<String>> sample() {
+        Map<String, List<String>> entries = new HashMap<>();
+        entries.put("apple", List.of("A round fruit", "A company"));
+        entries.put("banana", List.of("A yellow fruit"));
+        entries.put("empty", List.of());
+        return entries;
+    }
+}
@@ -0,0 +1,220 @@
+package server;
+
+import common.DictionaryResult;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Concurrent adds, removes and updates, on distinct words and on the same
+ * word, checking that the map and every index agree afterwards.
+ */
+public class DictionaryConcurrencyTest {
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 500;
+
+    @Test
+    public void changesToDistinctWordsAllLand() throws Exception {
+        Dictionary dictionary = new Dictionary();
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < ROUNDS; i++) {
+                String word = "word" + thread + "x" + i;
+                assertTrue(dictionary.addWord(word, "first " + i).isSuccess());
+                assertTrue(dictionary.addMeaning(word, "second " + i).isSuccess());
+                assertTrue(dictionary.updateMeaning(word, "first " + i, "updated " + i).isSuccess());
+                if (i % 2 == 0) {
+                    assertTrue(dictionary.removeWord(word).isSuccess());
+                }
+            }
+        });
+
+        for (int thread = 0; thread < THREADS; thread++) {
+            for (int i = 0; i < ROUNDS; i++) {
+                String word = "word" + thread + "x" + i;
+                if (i % 2 == 0) {
+                    assertTrue(dictionary.getMeanings(word).isEmpty());
+                    assertIndexed(dictionary, word, false);
+                } else {
+                    assertEquals(List.of("updated " + i, "second " + i), dictionary.getMeanings(word));
+                    assertIndexed(dictionary, word, true);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void onlyOneAddOfTheSameWordSucceeds() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        AtomicInteger added = new AtomicInteger();
+
+        runConcurrently(thread -> {
+            DictionaryResult result = dictionary.addWord("shared", "from thread " + thread);
+            if (result.isSuccess()) {
+                added.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, added.get());
+        assertEquals(1, dictionary.getMeanings("shared").size());
+    }
+
+    @Test
+    public void racingChangesToOneWordLeaveTheIndexesConsistent() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        AtomicBoolean stop = new AtomicBoolean();
+
+        // a reader checking that versions of the word never go back
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        Future<?> versions = reader.submit(() -> {
+            long last = -1;
+            while (!stop.get()) {
+                long version = dictionary.getWordVersion("contested");
+                if (version != -1) {
+                    assertTrue("version went back from " + last + " to " + version, version >= last);
+                    last = version;
+                }
+            }
+            return null;
+        });
+
+        runConcurrently(thread -> {
+            for (int i = 0; i < ROUNDS; i++) {
+                switch (i % 4) {
+                    case 0 -> dictionary.addWord("contested", "meaning " + thread);
+                    case 1 -> dictionary.addMeaning("contested", "extra " + thread);
+                    case 2 -> dictionary.updateMeaning("contested", "meaning " + thread, "<delete>");
+                    default -> dictionary.removeWord("contested");
+                }
+            }
+        });
+        stop.set(true);
+        versions.get(10, TimeUnit.SECONDS);
+        reader.shutdown();
+
+        boolean present = !dictionary.getMeanings("contested").isEmpty();
+        assertIndexed(dictionary, "contested", present);
+        if (present) {
+            // whatever won, the meaning index knows the meanings the word has
+            String meaning = dictionary.getMeanings("contested").get(0);
+            assertTrue(dictionary.findByMeaning(meaning, 10).contains("contested"));
+        }
+    }
+
+    @Test
+    public void batchHoldsOtherChangesOff() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        CountDownLatch inBatch = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> batch = executor.submit(() -> {
+                dictionary.runBatch(() -> {
+                    inBatch.countDown();
+                    try {
+                        release.await();
+                        // changes inside the batch take their stripe again
+                        dictionary.addWord("inside", "added by the batch");
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                return null;
+            });
+            assertTrue(inBatch.await(10, TimeUnit.SECONDS));
+
+            Future<DictionaryResult> outside = executor.submit(() -> dictionary.addWord("outside", "added meanwhile"));
+            Thread.sleep(100);
+            assertFalse(outside.isDone());
+
+            release.countDown();
+            batch.get(10, TimeUnit.SECONDS);
+            assertTrue(outside.get(10, TimeUnit.SECONDS).isSuccess());
+            assertTrue(dictionary.getWordVersion("inside") < dictionary.getWordVersion("outside"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void removingCompactWordsRacesWithReAdding() throws Exception {
+        Path file = Files.createTempFile("dictionary-test-", ".txt");
+        try {
+            List<String> lines = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                lines.add("loaded" + i + ": loaded meaning " + i);
+            }
+            Files.write(file, lines);
+            Dictionary dictionary = new Dictionary(Dictionary.STORAGE_COMPACT);
+            dictionary.loadFromFile(file.toString());
+
+            runConcurrently(thread -> {
+                String word = "loaded" + thread;
+                for (int i = 0; i < ROUNDS; i++) {
+                    assertTrue(dictionary.removeWord(word).isSuccess());
+                    assertTrue(dictionary.getMeanings(word).isEmpty());
+                    assertTrue(dictionary.addWord(word, "again " + i).isSuccess());
+                }
+            });
+
+            for (int thread = 0; thread < THREADS; thread++) {
+                String word = "loaded" + thread;
+                assertEquals(List.of("again " + (ROUNDS - 1)), dictionary.getMeanings(word));
+                assertIndexed(dictionary, word, true);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // the sorted words and the substring index agree with the map
+    private static void assertIndexed(Dictionary dictionary, String word, boolean expected) throws Exception {
+        assertEquals(word + " by prefix", expected, dictionary.getWordsWithPrefix(word, 1000).contains(word));
+        assertEquals(word + " by substring", expected, dictionary.getWordsContaining(word, 1000).contains(word));
+        assertEquals(word + " by pattern", expected,
+                dictionary.getWordsMatching(word, 1000, Long.MAX_VALUE).getWords().contains(word));
+    }
+
+    private interface Worker {
+        void run(int thread) throws Exception;
+    }
+
+    // runs the worker on every thread at once and rethrows the first failure
+    private static void runConcurrently(Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                int id = thread;
+                Callable<Void> task = () -> {
+                    start.await();
+                    worker.run(id);
+                    return null;
+                };
+                futures.add(executor.submit(task));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class GlobPatternTest {
+
+    @Test
+    public void questionMarkMatchesExactlyOneCharacter() {
+        GlobPattern glob = new GlobPattern("c?t");
+
+        assertTrue(matches(glob, "cat"));
+        assertTrue(matches(glob, "cut"));
+        assertFalse(matches(glob, "ct"));
+        assertFalse(matches(glob, "cart"));
+    }
+
+    @Test
+    public void starMatchesAnyRunIncludingNone() {
+        GlobPattern glob = new GlobPattern("c*t");
+
+        assertTrue(matches(glob, "ct"));
+        assertTrue(matches(glob, "cat"));
+        assertTrue(matches(glob, "carrot"));
+        assertFalse(matches(glob, "cats"));
+        assertFalse(matches(glob, "act"));
+    }
+
+    @Test
+    public void handlesRunsOfStarsAndMixedWildcards() {
+        assertTrue(matches(new GlobPattern("**"), ""));
+        assertTrue(matches(new GlobPattern("a**b"), "ab"));
+        assertTrue(matches(new GlobPattern("*?*"), "x"));
+        assertFalse(matches(new GlobPattern("*?*"), ""));
+        assertTrue(matches(new GlobPattern("?*?"), "ab"));
+        assertFalse(matches(new GlobPattern("?*?"), "a"));
+        assertTrue(matches(new GlobPattern("*ab*ab*"), "xxabyyab"));
+        assertFalse(matches(new GlobPattern("*ab*ab*"), "xxaby"));
+    }
+
+    @Test
+    public void anEmptyPatternOnlyMatchesTheEmptyWord() {
+        GlobPattern glob = new GlobPattern("");
+
+        assertTrue(matches(glob, ""));
+        assertFalse(matches(glob, "a"));
+    }
+
+    @Test
+    public void agreesWithARegularExpression() {
+        Random random = new Random(7);
+        for (int i = 0; i < 2000; i++) {
+            String pattern = randomString(random, "ab?*", random.nextInt(8));
+            String word = randomString(random, "ab", random.nextInt(8));
+            Pattern regex = Pattern.compile(pattern.replace("?", ".").replace("*", ".*"));
+
+            assertEquals(pattern + " on " + word, regex.matcher(word).matches(),
+                    matches(new GlobPattern(pattern), word));
+        }
+    }
+
+    @Test
+    public void acceptsPatternsUpToTheCap() {
+        String longest = "a".repeat(GlobPattern.MAX_LENGTH - 1) + "*";
+        assertEquals(63, GlobPattern.MAX_LENGTH);
+
+        GlobPattern glob = new GlobPattern(longest);
+        assertTrue(matches(glob, "a".repeat(GlobPattern.MAX_LENGTH - 1)));
+        assertTrue(matches(glob, "a".repeat(100)));
+        assertFalse(matches(glob, "a".repeat(GlobPattern.MAX_LENGTH - 2)));
+        assertTrue(matches(new GlobPattern("?".repeat(GlobPattern.MAX_LENGTH)), "b".repeat(63)));
+    }
+
+    @Test
+    public void rejectsPatternsOverTheCap() {
+        assertThrows(IllegalArgumentException.class, () -> new GlobPattern("a".repeat(GlobPattern.MAX_LENGTH + 1)));
+    }
+
+    @Test
+    public void literalPrefixStopsAtTheFirstWildcard() {
+        assertEquals("abc", new GlobPattern("abc*d").literalPrefix());
+        assertEquals("ab", new GlobPattern("ab?c").literalPrefix());
+        assertEquals("", new GlobPattern("*abc").literalPrefix());
+        assertEquals("abc", new GlobPattern("abc").literalPrefix());
+    }
+
+    @Test
+    public void runsOutOfStatesOnceNoMatchIsPossible() {
+        GlobPattern glob = new GlobPattern("ab*");
+
+        long states = glob.step(glob.start(), 'a');
+        assertTrue(states != 0);
+        assertEquals(0, glob.step(states, 'x'));
+
+        // a leading star keeps every prefix alive
+        GlobPattern open = new GlobPattern("*z");
+        states = open.start();
+        for (char c : "abcdef".toCharArray()) {
+            states = open.step(states, c);
+            assertTrue(states != 0);
+        }
+    }
+
+    @Test
+    public void dictionaryPruningFindsTheSameWordsAsAScan() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        Random random = new Random(11);
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            String word = randomString(random, "abcd", 1 + random.nextInt(7));
+            if (!words.contains(word)) {
+                words.add(word);
+                dictionary.addWord(word, "meaning");
+            }
+        }
+        words.sort(null);
+
+        for (String pattern : List.of("a*", "ab?d", "*cd", "?b*", "a*b*c", "dd??", "abcd", "*", "b?", "c*a?")) {
+            GlobPattern glob = new GlobPattern(pattern);
+            List<String> expected = new ArrayList<>();
+            for (String word : words) {
+                if (matches(glob, word)) {
+                    expected.add(word);
+                }
+            }
+            Dictionary.PatternMatches found = dictionary.getWordsMatching(pattern, Integer.MAX_VALUE, Long.MAX_VALUE);
+            assertEquals(pattern, expected, found.getWords());
+            assertTrue(found.isComplete());
+        }
+    }
+
+    @Test
+    public void dictionaryStopsAtTheLimit() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        for (String word : List.of("bat", "bet", "bit", "bot", "but", "cat")) {
+            dictionary.addWord(word, "meaning");
+        }
+
+        assertEquals(List.of("bat", "bet"), dictionary.getWordsMatching("B?T", 2, Long.MAX_VALUE).getWords());
+        assertEquals(List.of("bat", "cat"), dictionary.getWordsMatching("*at", 10, Long.MAX_VALUE).getWords());
+    }
+
+    @Test
+    public void dictionaryStopsWhenItsTimeIsUp() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        for (int i = 0; i < 2000; i++) {
+            dictionary.addWord("word" + i, "meaning");
+        }
+
+        // the clock is read every 256 words, so a spent budget stops the walk there
+        Dictionary.PatternMatches matches = dictionary.getWordsMatching("*", Integer.MAX_VALUE, 0);
+        assertFalse(matches.isComplete());
+        assertTrue(matches.getWords().size() < 2000);
+        assertTrue(dictionary.getWordsMatching("*", Integer.MAX_VALUE, Long.MAX_VALUE).isComplete());
+    }
+
+    @Test
+    public void dictionaryForgetsRemovedWords() throws Exception {
+        Dictionary dictionary = new Dictionary();
+        dictionary.addWord("cat", "an animal");
+        dictionary.addWord("cot", "a bed");
+        dictionary.removeWord("cat");
+
+        assertEquals(List.of("cot"), dictionary.getWordsMatching("c?t", 10, Long.MAX_VALUE).getWords());
+    }
+
+    @Test
+    public void dictionaryRejectsPatternsOverTheCap() {
+        Dictionary dictionary = new Dictionary();
+
+        DictionaryException e = assertThrows(DictionaryException.class,
+                () -> dictionary.getWordsMatching("*".repeat(GlobPattern.MAX_LENGTH + 1), 10, Long.MAX_VALUE));
+        assertEquals("INVALID_INPUT", e.getErrorCode());
+    }
+
+    private static boolean matches(GlobPattern glob, String word) {
+        long states = glob.start();
+        for (int i = 0; i < word.length() && states != 0; i++) {
+            states = glob.step(states, word.charAt(i));
+        }
+        return glob.accepts(states);
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+}
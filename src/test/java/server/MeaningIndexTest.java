@@ -0,0 +1,112 @@
+package server;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MeaningIndexTest {
+
+    @Test
+    public void tokenizesIntoLowerCaseRunsOfLettersAndDigits() {
+        assertEquals(Set.of("red", "fruit", "50", "ml"), MeaningIndex.tokenize("A red-fruit, 50 ml!"));
+        // single characters are left out
+        assertTrue(MeaningIndex.tokenize("a b c").isEmpty());
+        assertEquals(List.of("über", "straße"), List.copyOf(MeaningIndex.tokenize("Über Straße über")));
+    }
+
+    @Test
+    public void findsWordsWithEveryToken() {
+        MeaningIndex index = new MeaningIndex();
+        add(index, "apple", "A round fruit with red skin");
+        add(index, "cherry", "A small round red fruit");
+        add(index, "banana", "A long yellow fruit");
+
+        assertEquals(List.of("apple", "cherry"), index.find("red fruit", 10, 3)); // equal scores
+        assertEquals(List.of("banana"), index.find("YELLOW fruit", 10, 3));
+        assertTrue(index.find("red yellow", 10, 3).isEmpty());
+        assertTrue(index.find("purple", 10, 3).isEmpty());
+        assertTrue(index.find("a", 10, 3).isEmpty()); // no token long enough
+    }
+
+    @Test
+    public void ranksByWeightedOccurrences() {
+        MeaningIndex index = new MeaningIndex();
+        add(index, "once", "water");
+        add(index, "twice", "water", "still water");
+        add(index, "thrice", "water", "water and more water");
+
+        assertEquals(List.of("thrice", "twice", "once"), index.find("water", 10, 3));
+    }
+
+    @Test
+    public void rareTokensCountForMore() {
+        MeaningIndex index = new MeaningIndex();
+        // "common" is in every meaning, "rare" only in one
+        add(index, "a", "common common common rare");
+        add(index, "b", "common common common common rare common");
+        add(index, "c", "common rare rare rare");
+        for (int i = 0; i < 20; i++) {
+            add(index, "filler" + i, "common");
+        }
+
+        // c has the most of the rare token, b the most of the common one and loses
+        assertEquals("c", index.find("common rare", 10, 23).get(0));
+    }
+
+    @Test
+    public void breaksTiesInWordOrder() {
+        MeaningIndex index = new MeaningIndex();
+        add(index, "pear", "a green fruit");
+        add(index, "lime", "a green fruit");
+        add(index, "kiwi", "a green fruit");
+
+        assertEquals(List.of("kiwi", "lime", "pear"), index.find("green fruit", 10, 3));
+        assertEquals(List.of("kiwi", "lime"), index.find("green fruit", 2, 3));
+    }
+
+    @Test
+    public void updatesMovePostings() {
+        MeaningIndex index = new MeaningIndex();
+        index.update("word", Collections.emptyList(), List.of("old meaning"));
+        index.update("word", List.of("old meaning"), List.of("new meaning"));
+
+        assertTrue(index.find("old", 10, 1).isEmpty());
+        assertEquals(List.of("word"), index.find("new meaning", 10, 1));
+        assertEquals(2, index.getTokenCount());
+        assertEquals(2, index.getPostingCount());
+    }
+
+    @Test
+    public void updatesChangeCounts() {
+        MeaningIndex index = new MeaningIndex();
+        add(index, "first", "stone stone");
+        add(index, "second", "stone");
+        assertEquals(List.of("first", "second"), index.find("stone", 10, 2));
+
+        index.update("second", List.of("stone"), List.of("stone", "stone stone"));
+        assertEquals(List.of("second", "first"), index.find("stone", 10, 2));
+    }
+
+    @Test
+    public void removingAWordDropsItsTokens() {
+        MeaningIndex index = new MeaningIndex();
+        add(index, "kept", "shared token");
+        add(index, "removed", "shared unique");
+        index.update("removed", List.of("shared unique"), Collections.emptyList());
+
+        assertEquals(List.of("kept"), index.find("shared", 10, 1));
+        assertTrue(index.find("unique", 10, 1).isEmpty());
+        assertEquals(2, index.getTokenCount());
+        assertEquals(2, index.getPostingCount());
+        assertTrue(index.estimateBytes() > 0);
+    }
+
+    private static void add(MeaningIndex index, String word, String... meanings) {
+        index.update(word, Collections.emptyList(), List.of(meanings));
+    }
+}
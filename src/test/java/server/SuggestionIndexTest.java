@@ -0,0 +1,142 @@
+package server;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class SuggestionIndexTest {
+
+    @Test
+    public void distanceCountsEdits() {
+        assertEquals(0, SuggestionIndex.distance("apple", "apple"));
+        assertEquals(1, SuggestionIndex.distance("apple", "apples")); // insertion
+        assertEquals(1, SuggestionIndex.distance("apple", "aple"));   // deletion
+        assertEquals(1, SuggestionIndex.distance("apple", "apply"));  // substitution
+        assertEquals(2, SuggestionIndex.distance("apple", "ample!"));
+        assertEquals(1, SuggestionIndex.distance("", "a"));
+        assertEquals(0, SuggestionIndex.distance("", ""));
+    }
+
+    @Test
+    public void distanceCountsAnAdjacentSwapAsOneEdit() {
+        assertEquals(1, SuggestionIndex.distance("form", "from"));
+        assertEquals(1, SuggestionIndex.distance("ab", "ba"));
+        assertEquals(2, SuggestionIndex.distance("abc", "bca"));
+    }
+
+    @Test
+    public void distanceStopsEarlyForVeryDifferentLengths() {
+        assertEquals(SuggestionIndex.MAX_DISTANCE + 1, SuggestionIndex.distance("a", "abcdef"));
+        assertEquals(SuggestionIndex.MAX_DISTANCE + 1, SuggestionIndex.distance("", "abc"));
+    }
+
+    @Test
+    public void distanceIsSymmetric() {
+        String[] words = {"", "a", "ab", "ba", "abc", "acb", "kitten", "sitting", "flaw", "lawn"};
+        for (String a : words) {
+            for (String b : words) {
+                assertEquals(a + "/" + b, SuggestionIndex.distance(a, b), SuggestionIndex.distance(b, a));
+            }
+        }
+    }
+
+    @Test
+    public void findsEveryWordOneEditAway() {
+        SuggestionIndex index = new SuggestionIndex();
+        for (String word : List.of("cart", "care", "cat", "scart", "crat", "dart", "chart", "apple")) {
+            index.add(word);
+        }
+
+        // substitutions, a deletion, insertions and a transposition of "cart"
+        List<String> suggestions = index.suggest("cart", 10);
+        for (String expected : List.of("care", "cat", "scart", "crat", "dart", "chart")) {
+            assertTrue(expected + " in " + suggestions, suggestions.contains(expected));
+        }
+        assertFalse(suggestions.contains("apple"));
+    }
+
+    @Test
+    public void neverSuggestsTheWordItself() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("word");
+        index.add("ward");
+
+        assertEquals(List.of("ward"), index.suggest("word", 10));
+    }
+
+    @Test
+    public void ranksByDistanceThenAlphabetically() {
+        SuggestionIndex index = new SuggestionIndex();
+        for (String word : List.of("bca", "abd", "abx", "ab")) {
+            index.add(word);
+        }
+
+        // "ab", "abd", "abx" are one edit from "abc", "bca" two
+        assertEquals(List.of("ab", "abd", "abx", "bca"), index.suggest("abc", 10));
+        assertEquals(List.of("ab", "abd"), index.suggest("abc", 2));
+    }
+
+    @Test
+    public void findsOnlySomeWordsTwoEditsAway() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("bcad"); // "abcd" with a letter moved: one deletion and one insertion
+        index.add("axyd"); // two substitutions
+        index.add("abcdef"); // two insertions
+
+        assertEquals(List.of("bcad"), index.suggest("abcd", 10));
+    }
+
+    @Test
+    public void removedWordsAreNotSuggested() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("light");
+        index.add("night");
+        index.add("fight");
+        index.remove("night");
+        index.remove("never added");
+
+        assertEquals(List.of("fight", "light"), index.suggest("right", 10));
+        // a word sharing delete variants with a removed one keeps them
+        index.remove("fight");
+        assertEquals(List.of("light"), index.suggest("right", 10));
+    }
+
+    @Test
+    public void addingTwiceFilesTheWordOnce() {
+        SuggestionIndex index = new SuggestionIndex();
+        index.add("seed");
+        index.add("seed");
+        index.remove("seed");
+
+        assertTrue(index.suggest("need", 10).isEmpty());
+    }
+
+    @Test
+    public void longWordsAreFiledByTheirStart() {
+        SuggestionIndex index = new SuggestionIndex();
+        String longWord = "a".repeat(60);
+        index.add(longWord);
+
+        // differs past the filed prefix, so it shares every variant and ranks by the real distance
+        assertEquals(List.of(longWord), index.suggest("a".repeat(59) + "b", 10));
+        assertTrue(index.suggest("a".repeat(56) + "bbbb", 10).isEmpty());
+    }
+
+    @Test
+    public void dictionaryCanDoWithoutSuggestions() throws Exception {
+        Dictionary dictionary = new Dictionary(Dictionary.STORAGE_MAP, false);
+        dictionary.addWord("apple", "A round fruit");
+        dictionary.removeWord("apple");
+        dictionary.addWord("apply", "To put to use");
+
+        assertFalse(dictionary.hasSuggestions());
+        DictionaryException e = assertThrows(DictionaryException.class, () -> dictionary.getSuggestions("appla", 5));
+        assertEquals("UNSUPPORTED", e.getErrorCode());
+        assertTrue(new Dictionary().hasSuggestions());
+    }
+}
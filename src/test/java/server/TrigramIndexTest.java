@@ -0,0 +1,270 @@
+package server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrigramIndexTest {
+
+    @Test
+    public void findsWordsContainingTheFragment() {
+        TrigramIndex index = new TrigramIndex();
+        index.add("banana");
+        index.add("bandana");
+        index.add("cabana");
+        index.add("apple");
+
+        assertEquals(List.of("banana", "bandana", "cabana"), sorted(index.findContaining("ana", 10)));
+        assertEquals(List.of("banana", "cabana"), sorted(index.findContaining("bana", 10)));
+        assertEquals(List.of("apple"), index.findContaining("apple", 10));
+        assertTrue(index.findContaining("xyz", 10).isEmpty());
+    }
+
+    @Test
+    public void checksTheWordWhenItsTrigramsOccurApart() {
+        TrigramIndex index = new TrigramIndex();
+        // has "abc" and "bcd" but not "abcd"
+        index.add("abcxbcd");
+
+        assertTrue(index.findContaining("abcd", 10).isEmpty());
+        assertEquals(List.of("abcxbcd"), index.findContaining("xbc", 10));
+    }
+
+    @Test
+    public void stopsAtTheLimit() {
+        TrigramIndex index = new TrigramIndex();
+        for (int i = 0; i < 100; i++) {
+            index.add("word" + i);
+        }
+
+        assertEquals(5, index.findContaining("wor", 5).size());
+        assertEquals(100, index.findContaining("wor", 1000).size());
+    }
+
+    @Test
+    public void addAllMatchesSingleAdds() {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 40000; i++) {
+            words.add("w" + Integer.toString(i * 7919, 36));
+        }
+        TrigramIndex bulk = new TrigramIndex();
+        bulk.addAll(words);
+        // a word already present is not indexed twice
+        bulk.addAll(words.subList(0, 10));
+        TrigramIndex single = new TrigramIndex();
+        words.forEach(single::add);
+
+        for (String fragment : List.of("w1a", "abc", "zz", "w10")) {
+            assertEquals(fragment, sorted(single.findContaining(fragment, Integer.MAX_VALUE)),
+                    sorted(bulk.findContaining(fragment, Integer.MAX_VALUE)));
+        }
+        assertEquals(words.size(), bulk.idCount());
+    }
+
+    @Test
+    public void addAfterAddAllKeepsListsSorted() {
+        TrigramIndex index = new TrigramIndex();
+        index.addAll(List.of("mango", "tango"));
+        index.add("django");
+        index.addAll(List.of("ango", "fandango"));
+
+        assertEquals(List.of("ango", "django", "fandango", "mango", "tango"),
+                sorted(index.findContaining("ango", 10)));
+    }
+
+    @Test
+    public void removedWordsAreNotFound() {
+        TrigramIndex index = new TrigramIndex();
+        index.addAll(List.of("carrot", "parrot", "garrote"));
+        index.remove("parrot");
+        index.remove("missing");
+
+        assertEquals(List.of("carrot", "garrote"), sorted(index.findContaining("arro", 10)));
+        index.add("parrot");
+        assertEquals(List.of("carrot", "garrote", "parrot"), sorted(index.findContaining("arro", 10)));
+    }
+
+    @Test
+    public void removalsAreCompactedAway() {
+        TrigramIndex index = new TrigramIndex(Runnable::run);
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1000; i++) {
+                index.add("temp" + i);
+            }
+            for (int i = 0; i < 1000; i++) {
+                index.remove("temp" + i);
+            }
+        }
+        index.add("kept");
+
+        // without compaction ten thousand ids would have been handed out
+        assertTrue("ids: " + index.idCount(), index.idCount() < 2000);
+        assertTrue(index.findContaining("temp", 10).isEmpty());
+        assertEquals(List.of("kept"), index.findContaining("kep", 10));
+    }
+
+    @Test
+    public void liveWordsSurviveCompaction() {
+        TrigramIndex index = new TrigramIndex(Runnable::run);
+        List<String> kept = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            index.add("item" + i);
+            if (i % 3 == 0) {
+                kept.add("item" + i);
+            }
+        }
+        for (int i = 0; i < 3000; i++) {
+            if (i % 3 != 0) {
+                index.remove("item" + i);
+            }
+        }
+
+        // compacted once removed ids outnumbered the live words
+        assertTrue("ids: " + index.idCount(), index.idCount() < 3000);
+        assertEquals(sorted(kept), sorted(index.findContaining("item", Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void changesDuringCompactionAreKept() {
+        List<Runnable> rebuilds = new ArrayList<>();
+        TrigramIndex index = new TrigramIndex(rebuilds::add);
+        for (int i = 0; i < 3000; i++) {
+            index.add("item" + i);
+        }
+        for (int i = 0; i < 2000; i++) {
+            index.remove("item" + i);
+        }
+        assertEquals(1, rebuilds.size());
+
+        // the rebuild snapshots the words and runs while these land, before,
+        // during or after it; each change must end up in the rebuilt lists
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 500; i++) {
+                index.add("added" + i);
+                index.remove("item" + (2500 + i));
+            }
+        });
+        writer.start();
+        rebuilds.get(0).run();
+        joinQuietly(writer);
+        index.add("after");
+
+        assertTrue("ids: " + index.idCount(), index.idCount() < 3000);
+        assertEquals(500, index.findContaining("item", Integer.MAX_VALUE).size());
+        assertEquals(500, index.findContaining("added", Integer.MAX_VALUE).size());
+        assertEquals(List.of("after"), index.findContaining("aft", 10));
+    }
+
+    @Test
+    public void concurrentWritersKeepListsSorted() throws Exception {
+        TrigramIndex index = new TrigramIndex();
+        Thread[] writers = new Thread[8];
+        for (int t = 0; t < writers.length; t++) {
+            int thread = t;
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    index.add("word" + thread + "x" + i);
+                    if (i % 2 == 1) {
+                        index.remove("word" + thread + "x" + i); // enough to set off rebuilds
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        List<String> expected = new ArrayList<>();
+        for (int t = 0; t < writers.length; t++) {
+            for (int i = 0; i < 5000; i += 2) {
+                expected.add("word" + t + "x" + i);
+            }
+        }
+        // the lists of "wor" and "ord" are intersected by seeking, which needs them sorted
+        assertEquals(sorted(expected), sorted(index.findContaining("word", Integer.MAX_VALUE)));
+        assertEquals(List.of("word3x4998"), index.findContaining("word3x4998", 10));
+    }
+
+    @Test
+    public void insertKeepsIdsInOrder() {
+        TrigramIndex.Postings postings = new TrigramIndex.Postings(new int[] {2, 5, 9});
+
+        postings = postings.insert(7).insert(12).insert(0).insert(5);
+        assertEquals(6, postings.size);
+        assertEquals(List.of(0, 2, 5, 7, 9, 12), toList(postings));
+    }
+
+    @Test
+    public void shortFragmentsScanEveryWord() {
+        TrigramIndex index = new TrigramIndex();
+        index.addAll(List.of("ox", "box", "fox", "owl"));
+        index.remove("box");
+
+        assertEquals(List.of("fox", "ox"), sorted(index.findContaining("ox", 10)));
+        assertEquals(List.of("fox", "owl", "ox"), sorted(index.findContaining("", 10)));
+        assertEquals(1, index.findContaining("o", 1).size());
+    }
+
+    @Test
+    public void seekFindsTheFirstIdNotBelow() {
+        TrigramIndex.Postings postings = new TrigramIndex.Postings(new int[] {1, 3, 5, 7, 9, 11, 13, 15, 17});
+
+        assertEquals(0, postings.seek(0, 0));
+        assertEquals(0, postings.seek(1, 0));
+        assertEquals(1, postings.seek(2, 0));
+        assertEquals(4, postings.seek(9, 0));
+        assertEquals(5, postings.seek(10, 2));
+        assertEquals(8, postings.seek(17, 0));
+        assertEquals(9, postings.seek(18, 0));
+        // never moves back from the start it is given
+        assertEquals(6, postings.seek(3, 6));
+        assertEquals(9, postings.seek(1, 9));
+    }
+
+    @Test
+    public void seekAgreesWithALinearScan() {
+        int[] ids = new int[200];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i * 3 + (i % 2);
+        }
+        TrigramIndex.Postings postings = new TrigramIndex.Postings(ids);
+
+        for (int start = 0; start <= ids.length; start += 7) {
+            for (int id = -1; id <= ids[ids.length - 1] + 2; id++) {
+                int expected = start;
+                while (expected < ids.length && ids[expected] < id) {
+                    expected++;
+                }
+                assertEquals("seek(" + id + ", " + start + ")", expected, postings.seek(id, start));
+            }
+        }
+    }
+
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static List<Integer> toList(TrigramIndex.Postings postings) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < postings.size; i++) {
+            ids.add(postings.ids[i]);
+        }
+        return ids;
+    }
+
+    private static List<String> sorted(List<String> words) {
+        List<String> copy = new ArrayList<>(words);
+        Collections.sort(copy);
+        return copy;
+    }
+}